@@ -0,0 +1,228 @@
+/*
+ * DESC: builds an OpeningBook file for one board size. every position up to a number of plies from the empty board is
+ *       solved (the opening book), and so is every position with a few empty slots left that comes up in a batch of
+ *       seeded random games (the endgame tablebase). positions are solved in parallel and each result is appended to
+ *       <output>.partial as soon as it is found, so a stopped run picks up where it left off when started again
+ * USAGE: java BookGenerator <size> <opening plies> <endgame empty slots> <output file> [threads] [search depth] [games]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BookGenerator {
+    private static final int TABLE_MB = 64;       // transposition table per worker
+    private static final int ENDGAME_GAMES = 10000; // default number of random games sampled for endgame positions
+    private static final int FLUSH_EVERY = 256;   // results between flushes of the partial file
+    private static final int RESULT_BYTES = Long.BYTES + Short.BYTES + Integer.BYTES; // one result in the partial file
+    private static final long SEED = 1;
+
+    private int size;
+    private int depth;                             // search depth used to solve each position
+    private List<int[]> positions = new ArrayList<int[]>(); // move sequences that reach each position
+    private Set<Long> seen = new HashSet<Long>();  // keys of positions already listed
+    private Map<Long, Long> solved = new HashMap<Long, Long>(); // key to packed move and value, from earlier runs
+    private DataOutputStream partial;              // results appended as they are found
+    private int written;                           // results appended in this run
+
+    private BookGenerator(int size, int depth) {
+        this.size = size;
+        this.depth = depth;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 4) {
+            System.out.println("usage: java BookGenerator <size> <opening plies> <endgame empty slots> <output file> [threads] [search depth] [games]");
+            return;
+        }
+        int size = Integer.parseInt(args[0]);
+        int plies = Integer.parseInt(args[1]);
+        int empties = Integer.parseInt(args[2]);
+        String output = args[3];
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 5 ? Integer.parseInt(args[5]) : size * size;
+        int games = args.length > 6 ? Integer.parseInt(args[6]) : ENDGAME_GAMES;
+
+        BookGenerator generator = new BookGenerator(size, depth);
+        File partialFile = new File(output + ".partial");
+        generator.readPartial(partialFile);
+
+        // lists the positions to solve
+        Game game = new Game(size, null, null, 1);
+        generator.listOpenings(game, new int[size * size], 0, plies);
+        int openings = generator.positions.size();
+        generator.listEndgames(game, empties, games);
+        System.out.println(String.format("%d opening and %d endgame positions, %d already solved",
+                                         openings, generator.positions.size() - openings, generator.solved.size()));
+
+        // solves them, appending to the partial file
+        generator.partial = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partialFile, true)));
+        generator.solveAll(threads);
+        generator.partial.close();
+
+        // reads everything back, sorts by key, and writes the book
+        generator.solved.clear();
+        generator.readPartial(partialFile);
+        generator.writeBook(output);
+        partialFile.delete();
+    }
+
+    // lists every distinct position up to plies moves from the empty board
+    private void listOpenings(Game game, int[] moves, int ply, int plies) {
+        game.setPosition(moves, ply);
+        if (!add(game, moves, ply) || ply == plies || game.isFull())
+            return;
+
+        for (int move = 0; move < size * size; move++) {
+            if (game.getSlot(move / size, move % size) != Game.EMPTY)
+                continue;
+
+            moves[ply] = move;
+            listOpenings(game, moves, ply + 1, plies);
+            game.setPosition(moves, ply);
+        }
+    }
+
+    // lists the positions with at most empties empty slots that come up in seeded random games
+    private void listEndgames(Game game, int empties, int games) {
+        Random random = new Random(SEED);
+        int[] moves = new int[size * size];
+
+        for (int n = 0; n < games; n++) {
+            // a random order of every slot is a random game
+            for (int k = 0; k < moves.length; k++)
+                moves[k] = k;
+            for (int k = moves.length - 1; k > 0; k--) {
+                int swap = random.nextInt(k + 1);
+                int move = moves[swap];
+                moves[swap] = moves[k];
+                moves[k] = move;
+            }
+
+            for (int ply = Math.max(moves.length - empties, 0); ply < moves.length; ply++) {
+                game.setPosition(moves, ply);
+                add(game, moves, ply);
+            }
+        }
+    }
+
+    // adds the current position unless it was listed before. returns whether it was new
+    private boolean add(Game game, int[] moves, int ply) {
+        long key = game.positionKey();
+        if (!seen.add(key))
+            return false;
+
+        if (!solved.containsKey(key) && ply < size * size)
+            positions.add(Arrays.copyOf(moves, ply));
+        return true;
+    }
+
+    // solves the listed positions on a pool of workers, each with its own game and table
+    private void solveAll(int threads) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                Game game = new Game(size, null, null, TABLE_MB);
+                game.setCandidates(Game.CANDIDATES_ORDER); // book values have to be exact, so nothing is pruned
+                for (int k = next.getAndIncrement(); k < positions.size(); k = next.getAndIncrement()) {
+                    int[] moves = positions.get(k);
+                    char symbol = moves.length % 2 == 0 ? Game.PLAYER : Game.COMPUTER;
+
+                    game.setPosition(moves, moves.length);
+                    int move = game.bestMove(symbol, depth, Long.MAX_VALUE);
+                    record(game.positionKey(), game.canonicalMove(move), game.getLastValue());
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> worker : workers)
+            worker.get();
+        pool.shutdown();
+    }
+
+    // appends one result to the partial file
+    private synchronized void record(long key, int move, int value) {
+        try {
+            partial.writeLong(key);
+            partial.writeShort(move);
+            partial.writeInt(value);
+
+            if (++written % FLUSH_EVERY == 0) {
+                partial.flush();
+                System.out.println(written + " of " + positions.size() + " positions solved");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not write partial results", e);
+        }
+    }
+
+    // reads the results of earlier runs. a record cut short by a stopped run is cut off the file, so results appended
+    // after it line up again
+    private void readPartial(File file) throws IOException {
+        if (!file.exists())
+            return;
+
+        long whole = file.length() / RESULT_BYTES * RESULT_BYTES;
+        if (whole < file.length()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(whole);
+            }
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long key = in.readLong();
+                int move = in.readShort();
+                int value = in.readInt();
+                solved.put(key, (long) move << 32 | (value & 0xFFFFFFFFL));
+            }
+        } catch (EOFException e) {
+            // end of the results
+        }
+    }
+
+    // writes the solved positions as a book sorted by key
+    private void writeBook(String output) throws IOException {
+        long[] keys = new long[solved.size()];
+        int count = 0;
+        for (long key : solved.keySet())
+            keys[count++] = key;
+        Arrays.sort(keys);
+
+        int[] moves = new int[count];
+        int[] values = new int[count];
+        for (int k = 0; k < count; k++) {
+            long packed = solved.get(keys[k]);
+            moves[k] = (int) (packed >> 32);
+            values[k] = (int) packed;
+        }
+
+        OpeningBook.write(output, size, keys, moves, values, count);
+        System.out.println("wrote " + count + " positions to " + output);
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * DESC: plays the move found by the game's minmax search
+ */
+
+public class EnginePlayer implements Player {
+    private int depth;   // deepest search, 0 to use the game's settings
+    private long millis; // time budget per move
+
+    // searches with the game's time budget and no depth limit
+    public EnginePlayer() {
+    }
+
+    // searches at most depth moves ahead for at most millis per move
+    public EnginePlayer(int depth, long millis) {
+        if (depth < 1)
+            throw new IllegalArgumentException("depth must be at least 1");
+
+        this.depth = depth;
+        this.millis = millis;
+    }
+
+    @Override
+    public int move(Game game, char symbol) {
+        if (depth == 0)
+            return game.bestMove(symbol);
+        return game.bestMove(symbol, depth, millis);
+    }
+}
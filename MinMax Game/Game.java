@@ -1,49 +1,135 @@
 /* 
- * DESC: uses MinMax function with depth limit and alpha-beta pruning to quickly play a game
+ * DESC: uses MinMax function (in negamax form with principal variation search) with iterative deepening, a per-move time
+ *       budget, and alpha-beta pruning to quickly play a game
  * GAME: the game is player on a nxn board. The player and computer take turns placing on the board. The goal is to get as many in a row as possible before the board fills
  *       two points are received for each two in a row on the board. Three points are recieved for each three in a row. These values can stack (Ex: three in a row gives you 7 points because there is one three and two twos)
  *       the game does not account for illegal moves
  */
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
 
 public class Game {
-    private final char EMPTY = ' ';    // empty slot
-    private final char COMPUTER = 'X'; // computer
-    private final char PLAYER = '0';   // player
-    private final int MIN = 0;         // min level
-    private final int MAX = 3;         // max level
-    private final int DEPTH_LIM = 10;
+    public static final char EMPTY = ' ';    // empty slot
+    public static final char COMPUTER = 'X'; // computer
+    public static final char PLAYER = '0';   // player
+
+    // which moves the search looks at below the root
+    public static final int CANDIDATES_ALL = 0;   // every empty slot, in the usual order
+    public static final int CANDIDATES_ORDER = 1; // every empty slot, the ones near pieces first
+    public static final int CANDIDATES_PRUNE = 2; // only the slots near pieces, plus one quiet move far from them
+    private static final int INFINITY = Short.MAX_VALUE; // larger than any board value
+    private static final int ASPIRATION = 6;        // half width of the window searched around the last value
+    private static final int KILLERS = 2;           // killer moves kept per depth
+    private static final int CENTER_WEIGHT = 256;   // more than any centrality, so history is compared first
+    private static final long TACTICAL_WEIGHT = 1L << 48;        // ranks scoring and blocking moves above the rest
+    private static final long KILLER_ORDER = TACTICAL_WEIGHT - 1; // ranks killers above any history
+    private static final long MOVE_TIME = 200;      // default search time per computer move in milliseconds
+    private static final int CLOCK_MASK = 1023;     // the clock is read once every CLOCK_MASK + 1 nodes
+    private static final int MAX_SIZE = Long.SIZE; // a row or column has to fit in one long
+    private static final int TABLE_MB = 64;          // default transposition table budget
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+    private static final int SYMMETRIES = 8;         // rotations and reflections of a square board
+    private static final double EXPLORATION = 1.4;   // weight of the exploration term in the tree search's UCT
+    private static final int PLAYOUT_MASK = 63;      // the clock is read once every PLAYOUT_MASK + 1 playouts
+    static final int MAX_TREE_NODES = 1 << 22;       // largest tree one tree search thread grows
+    private static final long MIN_MOVE_TIME = 5;     // least time left for a move after crediting pondering
+    private static final long NEAR_WEIGHT = 1L << 40; // ranks slots near pieces above the other quiet moves
+    private static final int PRUNE_SIZE = 9;         // boards this size and up prune far moves by default
 
     private File otp;
     private FileWriter fw;
-    private BufferedWriter bw;
+    private BufferedWriter bw;   // game record, null for headless games which print nothing either
+    private Player[] players;    // the computer's and the player's move sources, by side
+    private GameJournal journal; // gets the moves of every finished game, null for none
+    private int[] played;        // slots played so far in this game, for the journal
+    private int plies;           // moves played so far
 
-    // Board class (inner class)
+    // Board class (inner class). each side owns one long per row and one long per column:
+    // bit j of rows[side][i] and bit i of cols[side][j] are set when that side holds slot (i, j)
     private class Board {
-        private char[][] array;  // board array
+        private long[][] rows;  // row words for each side
+        private long[][] cols;  // column words for each side
+        private int filled;     // number of filled slots
+        private long[] hashes;  // zobrist hash of the position under each of the 8 board symmetries
+        private int[] score;    // evaluate() of each side, kept up to date by place and remove
+        private long hotRows;   // bit i is set when row i holds a piece
+        private long hotCols;   // bit j is set when column j holds a piece
 
         private Board(int size) {
-            array = new char[size][size]; // creating array
-                                             
-            // filling the array with empty slots
-            for (int i = 0; i < size; i++)         
-                for (int j = 0; j < size; j++)
-                    array[i][j] = EMPTY;
+            rows = new long[2][size];
+            cols = new long[2][size];
+            score = new int[2];
+            hashes = new long[SYMMETRIES];
         }
     }
 
     private Board board; // cuurent game board
     private int size;    // size of board
+    private long rowMask; // bits of a row or column word that lie on the board
+    private long[][] zobrist;        // random key for each side and slot
+    private int[] centrality;        // larger for slots closer to the center of the board
+    private int[][] symmetries;      // slot each slot moves to under each symmetry, the identity first
+    private int[][] inverses;        // slot each slot comes from under each symmetry
+    private boolean symmetry = true; // whether the search merges and prunes symmetric positions
+    private boolean ordering = true; // whether moves are ordered by heuristics rather than row order
+    private int candidates;          // CANDIDATES_ALL, CANDIDATES_ORDER or CANDIDATES_PRUNE
+    private OpeningBook book;        // solved positions answered without searching, null for none
+    private TranspositionTable table; // results of earlier searches, shared by every search thread
+
+    // search state for the move being computed
+    private long moveTime = MOVE_TIME; // time budget per move in milliseconds
+    private ExecutorService pool;      // helper threads when more than one thread searches
+    private Searcher[] searchers;      // one per thread, the first runs on the calling thread
+    private TreeSearcher[] treeSearchers; // one per thread for Monte Carlo tree search, created when first used
+    private volatile long deadline;    // System.nanoTime() at which the current search gives up
+    private volatile boolean aborted;  // set when the deadline passes in the middle of an iteration
+    private int lastDepth;     // deepest completed iteration of the last move
+    private long lastNodes;    // nodes visited for the last move
+    private int lastValue;     // value of the last move for the side that made it
+    private double lastBranching;       // effective branching factor of the last move's deepest iteration
+    private double lastFirstCutoffRate; // share of the last move's cutoffs caused by the first move searched
+    private long lastPlayouts;          // random games played out for the last Monte Carlo move
+    private SearchStats lastStats;      // search counters of the last move
+    private SearchStats totalStats;     // search counters of every move of this game
+    private PrintStream statsLog;       // gets a JSON line of counters for every searched move, null for none
+
+    // pondering: searching the computer's answers to the player's likely moves while the player thinks
+    private ExecutorService ponderer;    // thread that ponders, null when pondering is off
+    private Future<?> ponderTask;        // pondering for the current player move
+    private volatile boolean cancelled;  // tells a search to stop as soon as possible, for pondering
+    private Board ponderBoard;           // the board the player is thinking about, with replies tried on it
+    private int ponderStabilizer;        // symmetries of that board, replies are pondered once per symmetric set
+    private int[] ponderDepths;          // deepest completed search of the computer's answer after each reply
+    private long[] ponderNanos;          // time spent pondering each reply
+    private int ponderHitDepth;          // ponderDepths entry of the move the player made, 0 for none
+    private long ponderHitNanos;         // ponderNanos entry of the move the player made
+    private int ponderHits;              // player moves that had been pondered
     
     public Game(int size, String otp) throws IOException {
-        this.size = size;
-        this.board = new Board(size);              
+        this(size, otp, TABLE_MB);
+    }
+
+    // creates a game whose transposition table uses about tableMegabytes of memory
+    public Game(int size, String otp, int tableMegabytes) throws IOException {
+        this(size, otp, new HumanPlayer(), new EnginePlayer(), tableMegabytes);
+    }
+
+    // creates a game between any two players that is printed and written to the output file
+    public Game(int size, String otp, Player player, Player computer, int tableMegabytes) throws IOException {
+        this(size, player, computer, tableMegabytes);
         this.otp = new File(otp);
         
         // setting up for output
@@ -51,26 +137,87 @@ public class Game {
         bw = new BufferedWriter(fw);
     }
 
+    // creates a headless game between two players. nothing is printed or written
+    public Game(int size, Player player, Player computer, int tableMegabytes) {
+        this(size, player, computer, new TranspositionTable(tableMegabytes));
+    }
+
+    // creates a headless game that searches with a table it may share with other games. games sharing a table have
+    // to be the same size, since moves are stored by slot
+    public Game(int size, Player player, Player computer, TranspositionTable table) {
+        if (size < 1 || size > MAX_SIZE)
+            throw new IllegalArgumentException("board size must be between 1 and " + MAX_SIZE);
+
+        this.size = size;
+        this.rowMask = size == MAX_SIZE ? -1L : (1L << size) - 1;
+        this.board = new Board(size);              
+        this.table = table;
+        this.lastStats = new SearchStats(size * size);
+        this.totalStats = new SearchStats(size * size);
+        if (SearchStats.ENABLED)
+            SearchMetrics.register();
+        this.players = new Player[2];
+        this.played = new int[size * size];
+        players[side(COMPUTER)] = computer;
+        players[side(PLAYER)] = player;
+
+        // zobrist keys are seeded so hashes are the same from run to run
+        Random random = new Random(ZOBRIST_SEED);
+        zobrist = new long[2][size * size];
+        for (int s = 0; s < 2; s++)
+            for (int k = 0; k < size * size; k++)
+                zobrist[s][k] = random.nextLong();
+
+        candidates = size >= PRUNE_SIZE ? CANDIDATES_PRUNE : CANDIDATES_ORDER;
+
+        centrality = new int[size * size];
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                centrality[i * size + j] = 2 * size - Math.abs(2 * i - (size - 1)) - Math.abs(2 * j - (size - 1));
+
+        // the 8 symmetries of the square: 4 rotations, then the same 4 after a mirror. rows and columns only ever
+        // trade places or reverse under these, so every symmetric board has the same scores
+        int m = size - 1;
+        symmetries = new int[SYMMETRIES][size * size];
+        inverses = new int[SYMMETRIES][size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int[][] images = { {i, j}, {j, m - i}, {m - i, m - j}, {m - j, i},
+                                   {i, m - j}, {j, i}, {m - i, j}, {m - j, m - i} };
+                for (int t = 0; t < SYMMETRIES; t++) {
+                    symmetries[t][i * size + j] = images[t][0] * size + images[t][1];
+                    inverses[t][images[t][0] * size + images[t][1]] = i * size + j;
+                }
+            }
+        }
+        searchers = new Searcher[] { new Searcher() };
+    }
+
     // plays game
     public void play() throws IOException {
-        // computer and player take turns
+        // player and computer take turns, the player moves first
         while (true)                             
         {
-            bw.write("Player move: ");
-            board = playerMove(board);
+            move(PLAYER);
 
             if (full(board)) {
                 break;
             }
 
-            bw.write("Computer move:\n");
-            board = computerMove(board);
+            move(COMPUTER);
 
             if (full(board)) {
                 break;
             }
         }
 
+        if (journal != null)
+            journal.record(size, played, plies);
+
+        // headless games are read back through getScore
+        if (bw == null)
+            return;
+
         // calcuates the scores for displaying
         int computerScore = evaluate(board, COMPUTER);
         int playerScore = evaluate(board, PLAYER);
@@ -97,138 +244,892 @@ public class Game {
         fw.close();
     }
 
-    // lets the player make a move. does not account for illegal moves
-    private Board playerMove(Board board) throws IOException {
-        // prompt player and read input
-        System.out.print("Player move: ");         
-        Scanner scanner = new Scanner(System.in); 
-        int i = scanner.nextInt();
-        int j = scanner.nextInt();
+    // asks a side's player for a move and plays it. does not account for illegal moves
+    private void move(char symbol) throws IOException {
+        Player mover = players[side(symbol)];
+        if (symbol == COMPUTER)
+            write("Computer move:\n");
+        else
+            write("Player move: ");
+
+        // the engine thinks about its answers while a player that does not search with this game is thinking
+        boolean ponder = ponderer != null && symbol == PLAYER
+                         && !(mover instanceof EnginePlayer) && !(mover instanceof MctsPlayer);
+        if (ponder)
+            startPondering();
+
+        long start = System.nanoTime();
+        int move = mover.move(this, symbol);
+        int i = move / size;
+        int j = move % size;
+        if (ponder)
+            stopPondering(move);
+
+        // places symbol and displays board
+        place(board, i, j, symbol);
+        played[plies++] = move;
+        if (symbol == COMPUTER) {
+            if (bw != null)
+                System.out.println("Computer move:");
+        }
+        else
+            write(i + " " + j + "\n");
+        displayBoard(board);
+
+        if (bw != null && mover instanceof MctsPlayer)
+            System.out.println(String.format("played out %d games, %d ms",
+                                             lastPlayouts, (System.nanoTime() - start) / 1000000));
+        else if (bw != null && mover instanceof EnginePlayer && lastDepth == 0)
+            System.out.println("played from book");
+        else if (bw != null && mover instanceof EnginePlayer)
+            System.out.println(String.format("searched to depth %d, %d nodes, %d ms, branching %.2f, first move cutoffs %.0f%%",
+                                             lastDepth, lastNodes, (System.nanoTime() - start) / 1000000,
+                                             lastBranching, 100 * lastFirstCutoffRate));
+    }
+
+    // finds the best move for a side on the current board within the time budget, as i * size + j.
+    // time spent pondering the board counts towards the budget, and if pondering already used all of it the
+    // search only goes as deep as pondering did, which the table answers almost at once
+    public int bestMove(char symbol) {
+        table.nextGeneration();
+        int depth = ponderHitDepth;
+        long left = moveTime - ponderHitNanos / 1000000;
+        ponderHitDepth = 0;
+        ponderHitNanos = 0;
+
+        if (depth > 0 && left < MIN_MOVE_TIME)
+            return record(symbol, search(board, symbol, depth, moveTime));
+        if (depth > 0)
+            return record(symbol, search(board, symbol, size * size, left));
+        return record(symbol, search(board, symbol, size * size, moveTime));
+    }
+
+    // finds the best move for a side on the current board searching at most maxDepth moves ahead for at most millis
+    public int bestMove(char symbol, int maxDepth, long millis) {
+        table.nextGeneration();
+        return record(symbol, search(board, symbol, maxDepth, millis));
+    }
+
+    // adds the last search's counters to the game's and the process's totals, writes its JSON line to the stats log,
+    // and passes the move through. with the counters switched off there is nothing to record
+    private int record(char symbol, int move) {
+        if (!SearchStats.ENABLED)
+            return move;
+
+        totalStats.add(lastStats);
+        String json = getLastStatsJson(symbol, move);
+        if (statsLog != null)
+            statsLog.println(json);
+        SearchMetrics.record(symbol, size, move, lastDepth, lastStats, json);
+
+        return move;
+    }
+
+    // one JSON line describing the last searched move and its counters
+    private String getLastStatsJson(char symbol, int move) {
+        return String.format(Locale.ROOT, "{\"side\":\"%c\",\"size\":%d,\"move\":%d,\"depth\":%d,\"value\":%d,\"search\":%s}",
+                             symbol, size, move, lastDepth, lastValue, lastStats.toJson());
+    }
+
+    // starts searching the computer's answers to the player's moves on the current board in the background. replies
+    // are searched one depth at a time, all of them at each depth, most likely first, so every reply has been
+    // searched about as deep as the others whenever the player moves
+    private void startPondering() {
+        if (full(board))
+            return;
+
+        if (ponderBoard == null) {
+            ponderBoard = new Board(size);
+            ponderDepths = new int[size * size];
+            ponderNanos = new long[size * size];
+        }
+        copy(board, ponderBoard);
+        ponderStabilizer = stabilizer(ponderBoard);
+        Arrays.fill(ponderDepths, 0);
+        Arrays.fill(ponderNanos, 0);
+        cancelled = false;
+        table.nextGeneration();
+
+        ponderTask = ponderer.submit(() -> {
+            int[] replies = new int[size * size];
+            int count = likelyReplies(ponderBoard, replies);
+            boolean[] solved = new boolean[size * size];
+
+            for (int limit = 1; limit <= size * size && !cancelled; limit++) {
+                for (int k = 0; k < count && !cancelled; k++) {
+                    int reply = replies[k];
+                    if (solved[reply] || ponderBoard.filled + 1 == size * size)
+                        continue;
+
+                    long start = System.nanoTime();
+                    place(ponderBoard, reply / size, reply % size, PLAYER);
+                    search(ponderBoard, COMPUTER, limit, Long.MAX_VALUE);
+                    remove(ponderBoard, reply / size, reply % size, PLAYER);
+
+                    if (cancelled)
+                        break;
+                    ponderNanos[reply] += System.nanoTime() - start;
+                    ponderDepths[reply] = lastDepth;
+                    solved[reply] = lastDepth < limit;
+                }
+            }
+        });
+    }
+
+    // cancels pondering once the player has moved, and keeps what was learned about the move that was made
+    private void stopPondering(int move) {
+        if (ponderTask == null)
+            return;
 
-        // places player symbol and displays board
-        board.array[i][j] = PLAYER;                
-        bw.write(i + " " + j + "\n");
-        displayBoard(board);           
+        cancelled = true;
+        try {
+            ponderTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("pondering failed", e.getCause());
+        }
+        ponderTask = null;
+        cancelled = false;
 
-        return board;
+        int reply = representative(move, ponderStabilizer);
+        ponderHitDepth = ponderDepths[reply];
+        ponderHitNanos = ponderNanos[reply];
+        if (ponderHitDepth > 0)
+            ponderHits++;
     }
 
-    // determines computer's move
-    private Board computerMove(Board board) throws IOException {                                             
-        // generates children of board
-        LinkedList<Board> children = generate(board, COMPUTER);
+    // fills replies with the player's moves on a board, one of each symmetric set, the likeliest first: moves that
+    // score for the player or block the computer, then central ones. returns how many there are
+    private int likelyReplies(Board board, int[] replies) {
+        int count = listMoves(board, replies, -1, stabilizer(board));
+        long[] order = new long[count];
+        for (int k = 0; k < count; k++) {
+            int i = replies[k] / size;
+            int j = replies[k] % size;
+            order[k] = (2L * gain(board, i, j, PLAYER) + gain(board, i, j, COMPUTER)) * CENTER_WEIGHT
+                       + centrality[replies[k]];
+        }
 
-        int maxIndex = -1;
-        int maxValue = Integer.MIN_VALUE;
-        // finds child with largest minmax value
-        for (int i = 0; i < children.size(); i++) {
-            int currentValue = minmax(children.get(i), MIN, 0, 0, 0);
-            if (currentValue > maxValue) {
-                maxIndex = i;
-                maxValue = currentValue;
+        // insertion sort, largest first. there are at most a few thousand replies and it runs once a move
+        for (int k = 1; k < count; k++) {
+            int reply = replies[k];
+            long key = order[k];
+            int n = k - 1;
+            for (; n >= 0 && order[n] < key; n--) {
+                replies[n + 1] = replies[n];
+                order[n + 1] = order[n];
             }
+            replies[n + 1] = reply;
+            order[n + 1] = key;
         }
 
-        // chooses this child as our next move
-        Board result = children.get(maxIndex);     
-                                                
-        // prints move
-        System.out.println("Computer move:"); 
-        displayBoard(result);                     
+        return count;
+    }
 
-        return result;
+    // finds a move for a side on the current board with Monte Carlo tree search within the time budget
+    public int monteCarloMove(char symbol) {
+        return monteCarlo(board, symbol, Long.MAX_VALUE, moveTime);
     }
 
-    // computes minmax value of a board
-    private int minmax(Board board, int level, int depth, int alpha, int beta)
-    {
-        int computerScore = evaluate(board, COMPUTER);
-        int playerScore = evaluate(board, PLAYER);
+    // finds a move for a side on the current board with at most playouts random games in at most millis
+    public int monteCarloMove(char symbol, long playouts, long millis) {
+        return monteCarlo(board, symbol, playouts, millis);
+    }
 
-        // returns the value of the terminal board
-        if (computerScore > playerScore)
-            return compareScore(computerScore, playerScore);
-        else if (computerScore < playerScore) 
-            return compareScore(playerScore, computerScore);
-        else {
-            // if we hit the depth limit return value of the furthest board we reached
-            if (depth == DEPTH_LIM) {
-                if (computerScore > playerScore)
-                    return compareScore(computerScore, playerScore);
-                else if (computerScore < playerScore) 
-                    return compareScore(playerScore, computerScore);
-            }
-            // if board is at max level
-            if (level == MAX) {
-                // generates children of board
-                LinkedList<Board> children = generate(board, COMPUTER);
-                int maxValue = Integer.MIN_VALUE;
-                
-                // finds maximum of minmax value of children. Uses alpha-beta pruning
-                for (int i = 0; i < children.size(); i++) {                
-                    int currentValue = minmax(children.get(i), MIN, depth + 1, alpha, beta);
-
-                    if (currentValue > maxValue)
-                        maxValue = currentValue;
-                    if (maxValue >= beta) 
-                    return maxValue;
-                    if (maxValue > alpha) 
-                    alpha = maxValue;
+    // finds a side's best move. searches with depth limits 1, 2, 3, ... up to maxDepth until the time runs out
+    // or an iteration reaches the end of the game, and returns the best move of the deepest iteration that completed
+    private int search(Board board, char symbol, int maxDepth, long millis) {
+        long start = System.nanoTime();
+        lastStats.clear();
+        lastStats.moves = 1;
+
+        // positions in the book are answered straight away
+        if (book != null) {
+            int orientation = canonicalOrientation(board);
+            long key = board.hashes[orientation];
+            int move = book.lookup(key);
+            if (move >= 0 && get(board, inverses[orientation][move] / size, inverses[orientation][move] % size) == EMPTY) {
+                lastDepth = 0;
+                lastNodes = 0;
+                lastValue = book.value(key);
+                lastStats.nanos = System.nanoTime() - start;
+                return inverses[orientation][move];
+            }
+        }
+
+        deadline = millis == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + millis * 1000000;
+        aborted = false;
+        for (Searcher searcher : searchers) {
+            copy(board, searcher.board);
+            searcher.nodes = 0;
+            searcher.stats.clear();
+            searcher.me = symbol;
+            searcher.opponent = symbol == COMPUTER ? PLAYER : COMPUTER;
+            searcher.age();
+        }
+
+        int[] rootMoves = new int[size * size];
+        int[] values = new int[size * size];
+        boolean[] exact = new boolean[size * size];
+        int bestMove = -1;
+        int bestValue = 0;
+        int depth = 0;
+        long previousNodes = 0;  // nodes searched by all iterations so far
+        long iterationNodes = 0; // nodes searched by the last iteration
+        lastBranching = 0;
+        for (int limit = 1; limit <= maxDepth; limit++) {
+            // the best move of the previous iteration is searched first
+            int count = listMoves(board, rootMoves, bestMove, stabilizer(board));
+
+            // searches a narrow window around the last value first, and the full window if the value falls outside
+            int low = depth == 0 ? -INFINITY : bestValue - ASPIRATION;
+            int high = depth == 0 ? INFINITY : bestValue + ASPIRATION;
+            boolean horizon = searchRoot(rootMoves, values, exact, count, limit, low, high);
+            int best = pickBest(rootMoves, values, exact, count);
+            if (!aborted && low != -INFINITY && (best < 0 || failedHigh(values, count, high))) {
+                horizon = searchRoot(rootMoves, values, exact, count, limit, -INFINITY, INFINITY);
+                best = pickBest(rootMoves, values, exact, count);
+            }
+
+            // the first iteration always finishes, so there is always a move to play unless the board is full
+            if (aborted || best < 0)
+                break;
+
+            bestMove = rootMoves[best];
+            bestValue = values[best];
+            depth = limit;
+
+            // effective branching factor is how many times more nodes this iteration took than the one before
+            long totalNodes = 0;
+            for (Searcher searcher : searchers)
+                totalNodes += searcher.nodes;
+            if (iterationNodes > 0)
+                lastBranching = (double) (totalNodes - previousNodes) / iterationNodes;
+            iterationNodes = totalNodes - previousNodes;
+            previousNodes = totalNodes;
+
+            // nothing was cut off by the depth limit, so deeper iterations would find the same thing
+            if (!horizon || System.nanoTime() > deadline)
+                break;
+        }
+
+        lastDepth = depth;
+        lastValue = bestValue;
+        lastNodes = 0;
+        for (Searcher searcher : searchers) {
+            lastNodes += searcher.nodes;
+            lastStats.add(searcher.stats);
+        }
+        lastStats.moves = 1;
+        lastStats.nanos = System.nanoTime() - start;
+        lastFirstCutoffRate = lastStats.cutoffs == 0 ? 0 : (double) lastStats.firstCutoffs / lastStats.cutoffs;
+
+        return bestMove;
+    }
+
+    // index of the root move with the largest exact value, ties going to the first move in row order. -1 when
+    // every move failed low
+    private int pickBest(int[] rootMoves, int[] values, boolean[] exact, int count) {
+        int best = -1;
+        for (int k = 0; k < count; k++) {
+            if (!exact[k])
+                continue;
+            if (best < 0 || values[k] > values[best] || values[k] == values[best] && rootMoves[k] < rootMoves[best])
+                best = k;
+        }
+
+        return best;
+    }
+
+    // whether any root move reached the top of the window, so its real value is unknown
+    private boolean failedHigh(int[] values, int count, int high) {
+        for (int k = 0; k < count; k++)
+            if (values[k] >= high)
+                return true;
+        return false;
+    }
+
+    // runs one iteration over the root moves inside the window (low, high) and fills in their values. the first move
+    // is searched alone with the whole window, then the threads take the remaining moves one at a time and test them
+    // with a null window just below the best value so far. moves that reach it are searched again for their exact
+    // value, so every move tied for best has an exact value whatever order the threads finish in.
+    // returns whether any subtree hit the depth limit
+    private boolean searchRoot(int[] rootMoves, int[] values, boolean[] exact, int count, int limit, int low, int high) {
+        for (Searcher searcher : searchers) {
+            searcher.searchLimit = limit;
+            searcher.horizon = false;
+        }
+
+        AtomicInteger alpha = new AtomicInteger(low);
+        searchers[0].searchMove(rootMoves, values, exact, 0, alpha, high);
+
+        AtomicInteger next = new AtomicInteger(1);
+        Future<?>[] helpers = new Future<?>[searchers.length - 1];
+        for (int t = 1; t < searchers.length && count > 1; t++) {
+            Searcher searcher = searchers[t];
+            helpers[t - 1] = pool.submit(() -> searcher.searchMoves(rootMoves, values, exact, count, next, alpha, high));
+        }
+        searchers[0].searchMoves(rootMoves, values, exact, count, next, alpha, high);
+
+        // waits for the helpers to finish their last moves
+        for (Future<?> helper : helpers) {
+            if (helper == null)
+                continue;
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted = true;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("search thread failed", e.getCause());
+            }
+        }
+
+        boolean horizon = false;
+        for (Searcher searcher : searchers)
+            horizon |= searcher.horizon;
+        return horizon;
+    }
+
+    // Searcher class (inner class). holds the board copy, buffers and move ordering tables one search thread works on
+    private class Searcher {
+        private Board board = new Board(size);
+        private int[][] moveLists = new int[size * size][];     // move buffer for each depth, created when first reached
+        private long[][] orderLists = new long[size * size][];  // ordering score of each move in the buffer
+        private long[][] nearLists = new long[size * size][];   // slots near pieces at each depth, by row
+        private int[][] killers = new int[size * size][KILLERS]; // latest moves that caused a cutoff at each depth
+        private long[][] history = new long[2][size * size];    // how much each side's moves have caused cutoffs
+        private char me;         // side the search is finding a move for
+        private char opponent;   // the other side
+        private int searchLimit; // depth limit of the current iteration
+        private boolean horizon; // set when the current subtree was cut off by the depth limit
+        private long nodes;      // nodes visited for the current move
+        private SearchStats stats = new SearchStats(size * size); // counters for the current move
+
+        // takes root moves from the shared counter until none are left
+        private void searchMoves(int[] rootMoves, int[] values, boolean[] exact, int count, AtomicInteger next,
+                                 AtomicInteger alpha, int high) {
+            for (int k = next.getAndIncrement(); k < count; k = next.getAndIncrement())
+                searchMove(rootMoves, values, exact, k, alpha, high);
+        }
+
+        // plays one move at the root and finds its value. the first move gets the whole window, later ones a null
+        // window below the best value so far and a full search only if they reach it
+        private void searchMove(int[] rootMoves, int[] values, boolean[] exact, int k, AtomicInteger alpha, int high) {
+            int move = rootMoves[k];
+            int low = alpha.get();
+            int value;
+            long start = SearchStats.ENABLED ? System.nanoTime() : 0;
+
+            place(board, move / size, move % size, me);
+            if (k == 0) {
+                value = -negamax(board, opponent, 0, -high, -low);
+            }
+            else {
+                low = low == -INFINITY ? low : low - 1;
+                value = -negamax(board, opponent, 0, -low - 1, -low);
+                if (value > low && value < high && !aborted)
+                    value = -negamax(board, opponent, 0, -high, -low);
+            }
+            remove(board, move / size, move % size, me);
+            if (SearchStats.ENABLED)
+                stats.rootNanos[move] += System.nanoTime() - start;
+
+            values[k] = value;
+            exact[k] = value > low && value < high;
+            if (exact[k])
+                alpha.accumulateAndGet(value, Math::max);
+        }
+
+        // computes the value of a board for the side to move. moves are made and unmade on the board itself,
+        // so the search does not allocate. the first move is searched with the window (alpha, beta) and the rest
+        // with a null window that only proves they are no better, searching again when one is
+        private int negamax(Board board, char toMove, int depth, int alpha, int beta)
+        {
+            // gives up on the iteration once the deadline passes. the first iteration always finishes
+            if ((++nodes & CLOCK_MASK) == 0 && searchLimit > 1 && (cancelled || System.nanoTime() > deadline))
+                aborted = true;
+            if (aborted)
+                return 0;
+            if (SearchStats.ENABLED)
+                stats.nodes[depth + 1]++;
+
+            char other = toMove == COMPUTER ? PLAYER : COMPUTER;
+            int lead = board.score[side(toMove)] - board.score[side(other)];
+
+            // a full board ends the game, and its value is how far the side to move is ahead
+            if (full(board)) {
+                if (SearchStats.ENABLED)
+                    stats.evaluations++;
+                return lead;
+            }
+
+            // if we hit the depth limit the board is scored by the current lead
+            if (depth >= searchLimit) {
+                if (SearchStats.ENABLED)
+                    stats.evaluations++;
+                horizon = true;
+                return lead;
+            }
+
+            // symmetric positions share one entry, keyed by the smallest of their hashes. moves are stored as they
+            // would be played on that orientation of the board. a stored result is reused if it was searched at
+            // least as deep and its bound settles this window. results that came from cut off searches mark this
+            // subtree as cut off too
+            int orientation = orientation(board);
+            long hash = board.hashes[orientation];
+            int draft = searchLimit - depth;
+            int tableMove = -1;
+            long entry = table.probe(hash);
+            if (SearchStats.ENABLED) {
+                stats.tableProbes++;
+                if (entry != TranspositionTable.MISS)
+                    stats.tableHits++;
+            }
+            if (entry != TranspositionTable.MISS) {
+                tableMove = TranspositionTable.move(entry);
+                if (tableMove >= 0)
+                    tableMove = inverses[orientation][tableMove];
+
+                if (TranspositionTable.depth(entry) >= draft) {
+                    int value = TranspositionTable.value(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && value >= beta
+                        || bound == TranspositionTable.UPPER && value <= alpha) {
+                        if (TranspositionTable.depth(entry) != TranspositionTable.SOLVED)
+                            horizon = true;
+                        return value;
+                    }
+                }
+            }
+            int alphaOrig = alpha;
+            int bestMove = -1;
+            int bestValue = -INFINITY;
+
+            // tracks whether this subtree alone reaches the depth limit
+            boolean outerHorizon = horizon;
+            horizon = false;
+
+            // when the board is symmetric only one move of each set of symmetric moves is searched
+            int count = orderMoves(board, toMove, depth, tableMove);
+            int[] moves = moveLists[depth];
+
+            for (int k = 0; k < count; k++) {
+                int move = nextMove(depth, k, count);
+                int i = move / size;
+                int j = move % size;
+
+                place(board, i, j, toMove);
+                int value;
+                if (k == 0) {
+                    value = -negamax(board, other, depth + 1, -beta, -alpha);
+                }
+                else {
+                    value = -negamax(board, other, depth + 1, -alpha - 1, -alpha);
+                    if (value > alpha && value < beta && !aborted)
+                        value = -negamax(board, other, depth + 1, -beta, -alpha);
+                }
+                remove(board, i, j, toMove);
+
+                if (aborted)
+                    return 0;
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestMove = move;
+                }
+                if (bestValue > alpha)
+                    alpha = bestValue;
+                if (alpha >= beta) {
+                    cutoff(toMove, depth, draft, move, k);
+                    break;
                 }
-                return maxValue;             
-            }
-            // if board is at min level
-            else {                     
-                // generates children of board
-                LinkedList<Board> children = generate(board, PLAYER);
-                int minValue = Integer.MAX_VALUE;
-
-                // finds minimum of minmax values of children. Uses alpha-beta pruning
-                for (int i = 0; i < children.size(); i++) {
-                    int currentValue = minmax(children.get(i), MAX, depth + 1, alpha, beta);
-
-                    if (currentValue < minValue)
-                        minValue = currentValue;
-                    if (minValue <= alpha) 
-                    return minValue;
-                    if (minValue < beta) 
-                    beta = minValue;
+            }
+
+            store(hash, orientation, draft, bestValue, alphaOrig, beta, bestMove);
+            horizon |= outerHorizon;
+            return bestValue;
+        }
+
+        // fills the move buffer of a depth and gives each move its ordering score: the stored best move first,
+        // then moves that score for this side or block a score for the other, then the killer moves of this depth,
+        // then slots near pieces, then by how often the move caused cutoffs, then by how close it is to the center
+        // of the board. when pruning, slots far from every piece are left out but for the most central one, which
+        // stands in for all the quiet moves. pruning is skipped in the endgame, where every slot is searched so the
+        // end of the game is scored exactly, and a node that left moves out counts as cut off by the depth limit. with ordering turned off every move but the stored one scores the same.
+        // returns the number of moves
+        private int orderMoves(Board board, char toMove, int depth, int tableMove) {
+            if (moveLists[depth] == null) {
+                moveLists[depth] = new int[size * size];
+                orderLists[depth] = new long[size * size];
+            }
+            int[] moves = moveLists[depth];
+            long[] order = orderLists[depth];
+            long[] sideHistory = history[side(toMove)];
+            char other = toMove == COMPUTER ? PLAYER : COMPUTER;
+
+            if (nearLists[depth] == null)
+                nearLists[depth] = new long[size];
+            long[] near = nearLists[depth];
+            boolean local = candidates != CANDIDATES_ALL && nearby(board, near);
+            int stabilizer = stabilizer(board);
+
+            int count;
+            if (local && candidates == CANDIDATES_PRUNE && size * size - board.filled > size) {
+                int quiet = quietMove(board, near, stabilizer);
+                if (quiet >= 0)
+                    near[quiet / size] |= 1L << (quiet % size);
+                count = listMoves(board, moves, tableMove, stabilizer, near);
+                if (quiet >= 0)
+                    near[quiet / size] &= ~(1L << (quiet % size));
+                if (hasFarMoves(board, near, quiet))
+                    horizon = true;
+            }
+            else
+                count = listMoves(board, moves, tableMove, stabilizer);
+
+            for (int k = 0; k < count; k++) {
+                int move = moves[k];
+                int i = move / size;
+                int j = move % size;
+                if (move == tableMove)
+                    order[k] = Long.MAX_VALUE;
+                else if (!ordering)
+                    order[k] = 0;
+                else if (gain(board, i, j, toMove) > 0 || gain(board, i, j, other) > 0)
+                    order[k] = (2L * gain(board, i, j, toMove) + gain(board, i, j, other)) * TACTICAL_WEIGHT;
+                else if (move == killers[depth][0])
+                    order[k] = KILLER_ORDER;
+                else if (move == killers[depth][1])
+                    order[k] = KILLER_ORDER - 1;
+                else if (local && (near[i] >>> j & 1L) != 0)
+                    order[k] = NEAR_WEIGHT + sideHistory[move] * CENTER_WEIGHT + centrality[move];
+                else
+                    order[k] = sideHistory[move] * CENTER_WEIGHT + centrality[move];
+            }
+
+            return count;
+        }
+
+        // the most central empty slot that is not near any piece and is the lowest of its symmetric set, or -1
+        private int quietMove(Board board, long[] near, int stabilizer) {
+            int quiet = -1;
+            for (int i = 0; i < size; i++) {
+                for (long far = empty(board, i) & ~near[i]; far != 0; far &= far - 1) {
+                    int move = i * size + Long.numberOfTrailingZeros(far);
+                    if (representative(move, stabilizer) == move && (quiet < 0 || centrality[move] > centrality[quiet]))
+                        quiet = move;
                 }
+            }
+
+            return quiet;
+        }
+
+        // whether any empty slot other than the quiet move is left out by near
+        private boolean hasFarMoves(Board board, long[] near, int quiet) {
+            for (int i = 0; i < size; i++) {
+                long far = empty(board, i) & ~near[i];
+                if (quiet >= 0 && quiet / size == i)
+                    far &= ~(1L << (quiet % size));
+                if (far != 0)
+                    return true;
+            }
+
+            return false;
+        }
+
+        // moves the best scoring of the moves not yet searched to position k and returns it. only the moves that
+        // are actually searched get sorted, which is usually few of them when a cutoff comes early
+        private int nextMove(int depth, int k, int count) {
+            int[] moves = moveLists[depth];
+            long[] order = orderLists[depth];
+
+            int best = k;
+            for (int n = k + 1; n < count; n++)
+                if (order[n] > order[best])
+                    best = n;
+
+            int move = moves[best];
+            moves[best] = moves[k];
+            moves[k] = move;
+            long score = order[best];
+            order[best] = order[k];
+            order[k] = score;
+
+            return move;
+        }
+
+        // records a move that caused a cutoff as a killer for its depth and in the side's history
+        private void cutoff(char toMove, int depth, int draft, int move, int k) {
+            if (SearchStats.ENABLED) {
+                stats.cutoffs++;
+                if (k == 0)
+                    stats.firstCutoffs++;
+            }
 
-                return minValue;
+            if (killers[depth][0] != move) {
+                killers[depth][1] = killers[depth][0];
+                killers[depth][0] = move;
             }
+            history[side(toMove)][move] += (long) draft * draft;
+        }
+
+        // halves the history scores and forgets killers so old searches count for less than new ones
+        private void age() {
+            for (int s = 0; s < 2; s++)
+                for (int move = 0; move < size * size; move++)
+                    history[s][move] >>= 1;
+            for (int[] depthKillers : killers)
+                Arrays.fill(depthKillers, -1);
+        }
+
+        // stores a search result, classifying the value against the window the position was searched with.
+        // a subtree that never reached the depth limit is stored as solved so it is reused at any depth
+        private void store(long hash, int orientation, int draft, int value, int alpha, int beta, int move) {
+            draft = horizon ? Math.min(draft, TranspositionTable.SOLVED - 1) : TranspositionTable.SOLVED;
+
+            int bound = TranspositionTable.EXACT;
+            if (value <= alpha)
+                bound = TranspositionTable.UPPER;
+            else if (value >= beta)
+                bound = TranspositionTable.LOWER;
+
+            table.store(hash, draft, value, bound, move < 0 ? move : symmetries[orientation][move]);
         }
     }
 
-    // returns a value depending on how much higher x is than y
-    private int compareScore(double x, double y) {
-        // if x has a score more than double y
-        if (x / 2 >= y)
-            return 3;
-        // if x has a score more than a quater better than y
-        else if (x / 1.33 >= y)
-            return 2;
-        // if x has a score just a little better y
-        else
-            return 1;
+    // finds a side's move by growing a search tree from random games played to the end. every thread grows its
+    // own tree from the same board with its own random games (root parallel), and the root move visited most
+    // over all trees is played, ties going to the first move in row order
+    private int monteCarlo(Board board, char symbol, long playouts, long millis) {
+        if (treeSearchers == null || treeSearchers.length != searchers.length) {
+            treeSearchers = new TreeSearcher[searchers.length];
+            for (int t = 0; t < treeSearchers.length; t++)
+                treeSearchers[t] = new TreeSearcher();
+        }
+
+        deadline = millis == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + millis * 1000000;
+        int stabilizer = stabilizer(board);
+        long share = (playouts + treeSearchers.length - 1) / treeSearchers.length;
+        for (int t = 0; t < treeSearchers.length; t++)
+            treeSearchers[t].start(board, symbol, stabilizer, playouts == Long.MAX_VALUE ? playouts : share, t);
+
+        Future<?>[] helpers = new Future<?>[treeSearchers.length - 1];
+        for (int t = 1; t < treeSearchers.length; t++)
+            helpers[t - 1] = pool.submit(treeSearchers[t]::grow);
+        treeSearchers[0].grow();
+
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("search thread failed", e.getCause());
+            }
+        }
+
+        // adds up the visits of each root move over the trees
+        long[] visits = new long[size * size];
+        lastPlayouts = 0;
+        for (TreeSearcher searcher : treeSearchers) {
+            searcher.addRootVisits(visits);
+            lastPlayouts += searcher.playouts;
+        }
+
+        int bestMove = -1;
+        for (int move = 0; move < size * size; move++)
+            if (visits[move] > 0 && (bestMove < 0 || visits[move] > visits[bestMove]))
+                bestMove = move;
+
+        return bestMove;
     }
 
-    // generates children of board using a symbol
-    private LinkedList<Board> generate(Board board, char symbol) {
-        LinkedList<Board> children = new LinkedList<Board>();
+    // TreeSearcher class (inner class). one thread's Monte Carlo search tree and scratch board. the tree is kept in
+    // parallel arrays indexed by node, node 0 being the root. a node's children are a linked list through sibling,
+    // and cursor walks the expansion order to find the node's next move that has no child yet
+    private class TreeSearcher {
+        private Board board = new Board(size);   // scratch board, reset to the root for every playout
+        private Board root = new Board(size);    // board being searched
+        private char me;                         // side the search is finding a move for
+        private int stabilizer;                  // symmetries of the root board, only one of each set of symmetric
+                                                 // root moves is grown
+        private long budget;                     // playouts left to play
+        private long playouts;                   // playouts played for the current move
+        private Random random;
+        private int[] order = new int[size * size];   // order in which moves get children, shuffled per search
+        private int[] empties = new int[size * size]; // empty slots of a playout, played in random order
+        private int[] path = new int[size * size + 1]; // nodes from the root to the node being played out
 
-        for (int i = 0; i < size; i++)
-            // goes through board
-            for (int j = 0; j < size; j++)   
-                // if slot is empty, add symbols and create child
-                if (board.array[i][j] == EMPTY) {                                  
-                    Board child = copy(board);     
-                    child.array[i][j] = symbol;    
-                    children.addLast(child);
+        private int nodes;            // nodes in the tree
+        private int[] move = new int[1024];
+        private int[] firstChild = new int[1024];
+        private int[] sibling = new int[1024];
+        private int[] cursor = new int[1024];
+        private int[] visits = new int[1024];
+        private double[] wins = new double[1024]; // wins of the side that moved into the node, ties counting half
+
+        // resets the tree to a single root node for a new search
+        private void start(Board from, char symbol, int stabilizer, long budget, int seed) {
+            copy(from, root);
+            this.me = symbol;
+            this.stabilizer = stabilizer;
+            this.budget = budget;
+            playouts = 0;
+            random = new Random(from.hashes[0] + seed);
+
+            for (int k = 0; k < order.length; k++)
+                order[k] = k;
+            for (int k = order.length - 1; k > 0; k--) {
+                int swap = random.nextInt(k + 1);
+                int slot = order[swap];
+                order[swap] = order[k];
+                order[k] = slot;
+            }
+
+            nodes = 0;
+            newNode(-1);
+        }
+
+        // plays out games until the budget or the time runs out. at least one game is always played
+        private void grow() {
+            while (playouts < budget) {
+                iterate();
+                if ((++playouts & PLAYOUT_MASK) == 0 && System.nanoTime() > deadline)
+                    break;
+            }
+        }
+
+        // one round of the search: walks down the tree by UCT, adds one child, plays a random game from it and
+        // counts the result in every node on the way
+        private void iterate() {
+            copy(root, board);
+            char toMove = me;
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+
+            while (!full(board)) {
+                // a node gets a child for every move before any child is visited twice. once the tree has all the
+                // nodes it may have, a node still short of children is played out from as it is, since it may have none
+                int next = -1;
+                if (cursor[node] < order.length) {
+                    if (nodes >= MAX_TREE_NODES)
+                        break;
+                    next = expand(node);
                 }
+                if (next < 0)
+                    next = select(node);
+
+                place(board, move[next] / size, move[next] % size, toMove);
+                toMove = toMove == COMPUTER ? PLAYER : COMPUTER;
+                node = next;
+                path[length++] = node;
+                if (visits[node] == 0)
+                    break;
+            }
 
-        return children;
-    }                 
+            int lead = playout(toMove);
+
+            // a node's wins belong to the side that moved into it, which is not the side to move there
+            for (int k = length - 1; k >= 0; k--) {
+                int n = path[k];
+                visits[n]++;
+                toMove = toMove == COMPUTER ? PLAYER : COMPUTER;
+                wins[n] += toMove == me ? reward(lead) : 1 - reward(lead);
+            }
+        }
+
+        // adds a child for the next move in the expansion order that is empty on the board, or returns -1 when
+        // every move already has one
+        private int expand(int node) {
+            for (; cursor[node] < order.length; cursor[node]++) {
+                int slot = order[cursor[node]];
+                if (get(board, slot / size, slot % size) != EMPTY)
+                    continue;
+                if (node == 0 && representative(slot, stabilizer) != slot)
+                    continue;
+
+                cursor[node]++;
+                int child = newNode(slot);
+                sibling[child] = firstChild[node];
+                firstChild[node] = child;
+                return child;
+            }
+
+            return -1;
+        }
+
+        // child with the highest upper confidence bound
+        private int select(int node) {
+            double logVisits = Math.log(visits[node]);
+            int best = -1;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for (int child = firstChild[node]; child != 0; child = sibling[child]) {
+                double bound = wins[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (bound > bestBound) {
+                    bestBound = bound;
+                    best = child;
+                }
+            }
+
+            return best;
+        }
+
+        // fills the board with random moves and returns how far the searching side ends up ahead
+        private int playout(char toMove) {
+            int count = 0;
+            for (int i = 0; i < size; i++)
+                for (long free = empty(board, i); free != 0; free &= free - 1)
+                    empties[count++] = i * size + Long.numberOfTrailingZeros(free);
+
+            int s = side(toMove);
+            for (int k = 0; k < count; k++) {
+                int swap = k + random.nextInt(count - k);
+                int slot = empties[swap];
+                empties[swap] = empties[k];
+                fill(board, slot / size, slot % size, s);
+                s ^= 1;
+            }
+
+            int mine = side(me);
+            return board.score[mine] - board.score[mine ^ 1];
+        }
+
+        // result of a game for the searching side: 1 for a win, 0.5 for a tie and 0 for a loss
+        private double reward(int lead) {
+            return lead > 0 ? 1 : lead == 0 ? 0.5 : 0;
+        }
+
+        // adds a node for a move, growing the arrays when they are full
+        private int newNode(int slot) {
+            if (nodes == move.length) {
+                int capacity = 2 * nodes;
+                move = Arrays.copyOf(move, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                sibling = Arrays.copyOf(sibling, capacity);
+                cursor = Arrays.copyOf(cursor, capacity);
+                visits = Arrays.copyOf(visits, capacity);
+                wins = Arrays.copyOf(wins, capacity);
+            }
+
+            int node = nodes++;
+            move[node] = slot;
+            firstChild[node] = 0;
+            sibling[node] = 0;
+            cursor[node] = 0;
+            visits[node] = 0;
+            wins[node] = 0;
+            return node;
+        }
+
+        // adds the visits of each root move of this tree to the totals
+        private void addRootVisits(long[] totals) {
+            for (int child = firstChild[0]; child != 0; child = sibling[child])
+                totals[move[child]] += visits[child];
+        }
+    }
 
     // checks the score of a particular child board. Adds up the score of the 
     private int evaluate(Board board, char symbol) {
@@ -243,72 +1144,580 @@ public class Game {
 
     // checks the score of a particular row
     private int checkRow(Board board, int i, char symbol) {
-        int score = 0;
-        int sequence = 0;
-        for (int j = 0; j < size; j++) {
-            sequence++;
-            if (board.array[i][j] != symbol)
-               sequence = 0;
-            
-            if (sequence >= 2) {
-                score += 2;
+        return lineScore(board.rows[side(symbol)][i]);
+    }
+
+    // checks the score of a particular column
+    private int checkColumn(Board board, int i, char symbol) {
+        return lineScore(board.cols[side(symbol)][i]);
+    }
+
+    // scores one row or column word. every slot that ends a run of two is worth 2 and
+    // every slot that ends a run of three is worth 3, so the run counts fall out of shifts
+    private int lineScore(long line) {
+        long pairs = line & (line >>> 1);
+        long triples = pairs & (line >>> 2);
+
+        return 2 * Long.bitCount(pairs) + 3 * Long.bitCount(triples);
+    }
+
+    // checks whether a board is full
+    private boolean full(Board board) {
+        return board.filled == size * size;
+    }
+
+    // fills moves with the empty slots of a board, first move first and the rest in row order, and returns how many
+    // there are. a move that a symmetry of the board in stabilizer maps to a lower slot is left out, since that
+    // lower slot leads to the same position turned around
+    private int listMoves(Board board, int[] moves, int first, int stabilizer) {
+        return listMoves(board, moves, first, stabilizer, null);
+    }
+
+    // same as above, but only the slots set in allowed (one mask per row, null for all) are listed after first
+    private int listMoves(Board board, int[] moves, int first, int stabilizer, long[] allowed) {
+        int count = 0;
+
+        if (first >= 0 && get(board, first / size, first % size) == EMPTY) {
+            first = representative(first, stabilizer);
+            moves[count++] = first;
+        }
+
+        for (int i = 0; i < size; i++) {
+            long empty = allowed == null ? empty(board, i) : empty(board, i) & allowed[i];
+            for (; empty != 0; empty &= empty - 1) {
+                int move = i * size + Long.numberOfTrailingZeros(empty);
+                if (move != first && representative(move, stabilizer) == move)
+                    moves[count++] = move;
             }
-            if (sequence >= 3) {
-                score += 3;
+        }
+
+        return count;
+    }
+
+    // fills near with the empty slots of each row that lie within two slots of a piece in the same row or column.
+    // only these can extend or block a run before another move is made near them. only rows and columns that hold
+    // a piece are looked at. returns whether there are any
+    private boolean nearby(Board board, long[] near) {
+        Arrays.fill(near, 0);
+        for (long hot = board.hotRows; hot != 0; hot &= hot - 1) {
+            int i = Long.numberOfTrailingZeros(hot);
+            near[i] = spread(board.rows[0][i] | board.rows[1][i]) & empty(board, i);
+        }
+
+        for (long hot = board.hotCols; hot != 0; hot &= hot - 1) {
+            int j = Long.numberOfTrailingZeros(hot);
+            long pieces = board.cols[0][j] | board.cols[1][j];
+            for (long cells = spread(pieces) & ~pieces; cells != 0; cells &= cells - 1)
+                near[Long.numberOfTrailingZeros(cells)] |= 1L << j;
+        }
+
+        long any = 0;
+        for (int i = 0; i < size; i++)
+            any |= near[i];
+        return any != 0;
+    }
+
+    // slots of a line within two slots of a set bit
+    private long spread(long line) {
+        return (line << 1 | line >>> 1 | line << 2 | line >>> 2) & rowMask;
+    }
+
+    // lowest slot a move can be turned into by the symmetries in stabilizer
+    private int representative(int move, int stabilizer) {
+        int lowest = move;
+        for (int t = 1; t < SYMMETRIES; t++)
+            if ((stabilizer >>> t & 1) != 0 && symmetries[t][move] < lowest)
+                lowest = symmetries[t][move];
+
+        return lowest;
+    }
+
+    // returns a bit for each symmetry that maps the board onto itself. a matching hash is confirmed piece by piece
+    private int stabilizer(Board board) {
+        int stabilizer = 0;
+        if (!symmetry)
+            return stabilizer;
+
+        for (int t = 1; t < SYMMETRIES; t++)
+            if (board.hashes[t] == board.hashes[0] && maps(board, t))
+                stabilizer |= 1 << t;
+
+        return stabilizer;
+    }
+
+    // checks whether a symmetry moves every piece onto a piece of the same side
+    private boolean maps(Board board, int t) {
+        for (int s = 0; s < 2; s++) {
+            for (int i = 0; i < size; i++) {
+                for (long pieces = board.rows[s][i]; pieces != 0; pieces &= pieces - 1) {
+                    int image = symmetries[t][i * size + Long.numberOfTrailingZeros(pieces)];
+                    if ((board.rows[s][image / size] >>> (image % size) & 1L) == 0)
+                        return false;
+                }
             }
         }
 
-        return score;
+        return true;
+    }
+
+    // symmetry used for the board's key in the table, the canonical one unless symmetry is turned off
+    private int orientation(Board board) {
+        return symmetry ? canonicalOrientation(board) : 0;
     }
 
-    // checks the score of a particular column
-    private int checkColumn(Board board, int i, char symbol) {
-        int score = 0;
-        int sequence = 0;
-        for (int j = 0; j < size; j++) {
-            sequence++;
-            if (board.array[j][i] != symbol)
-               sequence = 0;
-            
-            if (sequence >= 2) {
-                score += 2;
+    // symmetry whose hash of the board is smallest. every symmetric board has the same smallest hash
+    private int canonicalOrientation(Board board) {
+        int orientation = 0;
+        for (int t = 1; t < SYMMETRIES; t++)
+            if (board.hashes[t] < board.hashes[orientation])
+                orientation = t;
+
+        return orientation;
+    }
+
+    // copies one board onto another
+    private void copy(Board from, Board to) {
+        for (int s = 0; s < 2; s++) {
+            System.arraycopy(from.rows[s], 0, to.rows[s], 0, size);
+            System.arraycopy(from.cols[s], 0, to.cols[s], 0, size);
+        }
+        to.filled = from.filled;
+        System.arraycopy(from.hashes, 0, to.hashes, 0, SYMMETRIES);
+        to.score[0] = from.score[0];
+        to.score[1] = from.score[1];
+        to.hotRows = from.hotRows;
+        to.hotCols = from.hotCols;
+    }
+
+    // places a symbol on an empty slot. only the row and column through the slot can change score,
+    // so the side's running score is moved by the difference of those two lines
+    private void place(Board board, int i, int j, char symbol) {
+        int s = side(symbol);
+        fill(board, i, j, s);
+        for (int t = 0; t < SYMMETRIES; t++)
+            board.hashes[t] ^= zobrist[s][symmetries[t][i * size + j]];
+    }
+
+    // places side s on an empty slot without updating the hashes, for random playouts that never look a board up
+    private void fill(Board board, int i, int j, int s) {
+        int before = lineScore(board.rows[s][i]) + lineScore(board.cols[s][j]);
+        board.rows[s][i] |= 1L << j;
+        board.cols[s][j] |= 1L << i;
+        board.score[s] += lineScore(board.rows[s][i]) + lineScore(board.cols[s][j]) - before;
+        board.filled++;
+        board.hotRows |= 1L << i;
+        board.hotCols |= 1L << j;
+    }
+
+    // returns how much placing a symbol on an empty slot would add to its side's score
+    private int gain(Board board, int i, int j, char symbol) {
+        int s = side(symbol);
+        long row = board.rows[s][i];
+        long col = board.cols[s][j];
+
+        return lineScore(row | 1L << j) + lineScore(col | 1L << i) - lineScore(row) - lineScore(col);
+    }
+
+    // takes a symbol back off a slot
+    private void remove(Board board, int i, int j, char symbol) {
+        int s = side(symbol);
+        int before = lineScore(board.rows[s][i]) + lineScore(board.cols[s][j]);
+        board.rows[s][i] &= ~(1L << j);
+        board.cols[s][j] &= ~(1L << i);
+        board.score[s] += lineScore(board.rows[s][i]) + lineScore(board.cols[s][j]) - before;
+        board.filled--;
+        if ((board.rows[0][i] | board.rows[1][i]) == 0)
+            board.hotRows &= ~(1L << i);
+        if ((board.cols[0][j] | board.cols[1][j]) == 0)
+            board.hotCols &= ~(1L << j);
+        for (int t = 0; t < SYMMETRIES; t++)
+            board.hashes[t] ^= zobrist[s][symmetries[t][i * size + j]];
+    }
+
+    // returns the empty slots of a row as a bit mask
+    private long empty(Board board, int i) {
+        return ~(board.rows[0][i] | board.rows[1][i]) & rowMask;
+    }
+
+    // returns the symbol in a slot
+    private char get(Board board, int i, int j) {
+        if ((board.rows[0][i] >>> j & 1L) != 0)
+            return COMPUTER;
+        if ((board.rows[1][i] >>> j & 1L) != 0)
+            return PLAYER;
+        return EMPTY;
+    }
+
+    // index of a symbol's words in the board arrays
+    private int side(char symbol) {
+        return symbol == COMPUTER ? 0 : 1;
+    }
+
+    // plays random move sequences on a scratch board, taking them back in random order, and checks the
+    // incremental scores against a full evaluate() after every step. returns the number of steps checked
+    public int verifyScores(int sequences, long seed) {
+        Random random = new Random(seed);
+        Board scratch = new Board(size);
+        int[] moves = new int[size * size];
+        char[] symbols = new char[size * size];
+        int checked = 0;
+
+        for (int n = 0; n < sequences; n++) {
+            // fills a random number of slots with random symbols
+            int length = random.nextInt(size * size + 1);
+            for (int k = 0; k < size * size; k++)
+                moves[k] = k;
+            for (int k = 0; k < length; k++) {
+                int swap = k + random.nextInt(size * size - k);
+                int move = moves[swap];
+                moves[swap] = moves[k];
+                moves[k] = move;
+
+                symbols[k] = random.nextBoolean() ? COMPUTER : PLAYER;
+                place(scratch, move / size, move % size, symbols[k]);
+                checkScores(scratch);
+                checked++;
             }
-            if (sequence >= 3) {
-                score += 3;
+
+            // takes the moves back, mostly last in first out but sometimes from the middle
+            while (length > 0) {
+                int k = random.nextInt(4) == 0 ? random.nextInt(length) : length - 1;
+                remove(scratch, moves[k] / size, moves[k] % size, symbols[k]);
+                moves[k] = moves[length - 1];
+                symbols[k] = symbols[length - 1];
+                length--;
+                checkScores(scratch);
+                checked++;
             }
         }
 
-        return score;
+        return checked;
     }
 
-    // checks whether a board is full
-    private boolean full(Board board) {
-        for (int i = 0; i < size; i++)
-            for (int j = 0; j < size; j++)
-                if (board.array[i][j] == EMPTY)
-                   return false;
+    // throws if the incremental scores or hot lines of a board disagree with the pieces on it
+    private void checkScores(Board board) {
+        int computerScore = evaluate(board, COMPUTER);
+        int playerScore = evaluate(board, PLAYER);
 
-        return true;
+        if (board.score[side(COMPUTER)] != computerScore || board.score[side(PLAYER)] != playerScore)
+            throw new IllegalStateException(String.format("incremental scores %d/%d but evaluate gives %d/%d",
+                board.score[side(COMPUTER)], board.score[side(PLAYER)], computerScore, playerScore));
+
+        // the hot row and column masks have to match the pieces too
+        long hotRows = 0;
+        long hotCols = 0;
+        for (int k = 0; k < size; k++) {
+            if ((board.rows[0][k] | board.rows[1][k]) != 0)
+                hotRows |= 1L << k;
+            if ((board.cols[0][k] | board.cols[1][k]) != 0)
+                hotCols |= 1L << k;
+        }
+        if (board.hotRows != hotRows || board.hotCols != hotCols)
+            throw new IllegalStateException("hot row or column masks do not match the board");
+    }
+
+    // sets the time budget for each computer move
+    public void setMoveTime(long millis) {
+        moveTime = millis;
     }
 
-    // makes copy of a board
-    private Board copy(Board board) {
-        Board result = new Board(size);      
+    // sets how many threads search each computer move. results are the same for any number of threads
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("need at least one search thread");
 
-        for (int i = 0; i < size; i++)       
-            for (int j = 0; j < size; j++)
-                result.array[i][j] = board.array[i][j];
+        if (pool != null)
+            pool.shutdownNow();
+        pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread thread = new Thread(r, "search");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        searchers = new Searcher[threads];
+        for (int t = 0; t < threads; t++)
+            searchers[t] = new Searcher();
+    }
+
+    // turns pondering on or off. while the player thinks, the computer searches its answers to the player's likely
+    // moves on another thread, and the table keeps what it finds for the move the player makes
+    public void setPondering(boolean pondering) {
+        if (!pondering && ponderer != null) {
+            ponderer.shutdownNow();
+            ponderer = null;
+        }
+        else if (pondering && ponderer == null) {
+            ponderer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // player moves whose answer had been pondered
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+    // answers positions found in a book without searching. null turns the book off
+    public void setBook(OpeningBook book) {
+        if (book != null && book.getSize() != size)
+            throw new IllegalArgumentException("book is for " + book.getSize() + "x" + book.getSize() + " boards");
+
+        this.book = book;
+    }
+
+    // hands the moves of the game to a journal once it ends. null turns the journal off
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
 
-        return result;                       
+    // places a symbol on the current board, for tools that replay recorded games
+    void playMove(int move, char symbol) {
+        place(board, move / size, move % size, symbol);
+    }
+
+    // clears the board and plays moves on it, the player first, as a game would
+    void setPosition(int[] moves, int count) {
+        board = new Board(size);
+        for (int k = 0; k < count; k++)
+            place(board, moves[k] / size, moves[k] % size, k % 2 == 0 ? PLAYER : COMPUTER);
+    }
+
+    // key of the current board in a book
+    long positionKey() {
+        return board.hashes[canonicalOrientation(board)];
+    }
+
+    // turns a move on the current board into the same move on the board's canonical orientation
+    int canonicalMove(int move) {
+        return symmetries[canonicalOrientation(board)][move];
+    }
+
+    // value of the last move found by bestMove, for the side that made it
+    int getLastValue() {
+        return lastValue;
+    }
+
+    // chooses which moves the search looks at below the root: CANDIDATES_ALL, CANDIDATES_ORDER (slots near pieces
+    // first) or CANDIDATES_PRUNE (only slots near pieces, plus one quiet move). boards of 9x9 and up prune by default
+    public void setCandidates(int candidates) {
+        if (candidates < CANDIDATES_ALL || candidates > CANDIDATES_PRUNE)
+            throw new IllegalArgumentException("unknown candidate setting " + candidates);
+        this.candidates = candidates;
+    }
+
+    // turns killer, history and centrality move ordering on or off
+    public void setOrdering(boolean ordering) {
+        this.ordering = ordering;
+    }
+
+    // turns merging and pruning of symmetric positions on or off
+    public void setSymmetry(boolean symmetry) {
+        this.symmetry = symmetry;
+    }
+
+    // places random pieces, the same number for each side, without giving either side a run.
+    // used to set up repeatable positions for benchmarks
+    void randomPosition(int pieces, long seed) {
+        Random random = new Random(seed);
+        board = new Board(size);
+
+        for (int n = 0; n < 2 * pieces && board.filled < size * size; n++) {
+            char symbol = n % 2 == 0 ? PLAYER : COMPUTER;
+            for (int tries = 0; tries < 100; tries++) {
+                int i = random.nextInt(size);
+                int j = random.nextInt(size);
+                if (get(board, i, j) != EMPTY)
+                    continue;
+
+                place(board, i, j, symbol);
+                if (board.score[side(symbol)] == 0)
+                    break;
+                remove(board, i, j, symbol);
+            }
+        }
+    }
+
+    // places random runs along rows and columns, two pieces long, then three, then four, taking turns between the
+    // sides until each has the given number of pieces, so both sides score. used to set up repeatable positions for
+    // benchmarks that have to go through the scoring
+    void runPosition(int pieces, long seed) {
+        Random random = new Random(seed);
+        board = new Board(size);
+
+        int[] placed = new int[2];
+        int[] length = {2, 2};
+        for (int tries = 0; tries < 1000 && (placed[0] < pieces || placed[1] < pieces); tries++) {
+            int s = placed[0] <= placed[1] ? 0 : 1;
+            char symbol = s == 0 ? PLAYER : COMPUTER;
+            int run = Math.min(length[s], pieces - placed[s]);
+            boolean across = random.nextBoolean();
+            int i = random.nextInt(across ? size : size - run + 1);
+            int j = random.nextInt(across ? size - run + 1 : size);
+
+            boolean free = true;
+            for (int n = 0; n < run && free; n++)
+                free = get(board, across ? i : i + n, across ? j + n : j) == EMPTY;
+            if (!free)
+                continue;
+
+            for (int n = 0; n < run; n++)
+                place(board, across ? i : i + n, across ? j + n : j, symbol);
+            placed[s] += run;
+            length[s] = length[s] >= Math.min(4, size) ? 2 : length[s] + 1;
+        }
+    }
+
+    // searches the current board for the computer to a fixed depth with no time limit and returns the best move
+    int searchDepth(int depth) {
+        table.nextGeneration();
+        return record(COMPUTER, search(board, COMPUTER, depth, Long.MAX_VALUE));
+    }
+
+    // pieces of the search run alone on the current board, for benchmarks. the kernels repeat their step times times
+    // and return a checksum of what they computed so the work cannot be optimized away
+
+    // scores the board for both sides from scratch
+    long benchEvaluate(int times) {
+        long sum = 0;
+        for (int n = 0; n < times; n++)
+            sum += 31 * evaluate(board, COMPUTER) + evaluate(board, PLAYER);
+        return sum;
+    }
+
+    // lists and orders the computer's moves the way the search does at every node
+    long benchGenerate(int times) {
+        Searcher searcher = searchers[0];
+        copy(board, searcher.board);
+        long sum = 0;
+        for (int n = 0; n < times; n++)
+            sum += searcher.orderMoves(searcher.board, COMPUTER, 0, -1) + searcher.orderLists[0][0];
+        return sum;
+    }
+
+    // copies the board onto a scratch board
+    long benchCopy(int times) {
+        Board scratch = new Board(size);
+        long sum = 0;
+        for (int n = 0; n < times; n++) {
+            copy(board, scratch);
+            sum += scratch.hashes[n & (SYMMETRIES - 1)];
+        }
+        return sum;
+    }
+
+    // empties the table and forgets killers and history, so the next search starts as it would in a new game
+    void clearSearch() {
+        table.clear();
+        for (Searcher searcher : searchers) {
+            for (long[] sideHistory : searcher.history)
+                Arrays.fill(sideHistory, 0);
+            for (int[] depthKillers : searcher.killers)
+                Arrays.fill(depthKillers, -1);
+        }
+    }
+
+    // one negamax call for the computer to a fixed depth with the whole window on one thread: no iterative
+    // deepening, aspiration window, book or root splitting. the table is used as it is. returns the value
+    int benchMinmax(int depth) {
+        Searcher searcher = searchers[0];
+        copy(board, searcher.board);
+        searcher.nodes = 0;
+        searcher.stats.clear();
+        searcher.me = COMPUTER;
+        searcher.opponent = PLAYER;
+        searcher.age();
+        searcher.searchLimit = depth;
+        searcher.horizon = false;
+        deadline = Long.MAX_VALUE;
+        aborted = false;
+
+        int value = searcher.negamax(searcher.board, COMPUTER, 0, -INFINITY, INFINITY);
+        lastNodes = searcher.nodes;
+        return value;
+    }
+
+    // depth of the deepest completed iteration of the last computer move
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    // nodes searched for the last computer move
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    // random games played out for the last Monte Carlo move
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    // effective branching factor of the last computer move: nodes of its deepest iteration over nodes of the one before
+    public double getLastBranching() {
+        return lastBranching;
+    }
+
+    // search counters of the last move searched, and of every move of the game
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    public SearchStats getTotalStats() {
+        return totalStats;
+    }
+
+    // writes a JSON line of search counters for every move searched to log. null stops it
+    public void setStatsLog(PrintStream log) {
+        statsLog = log;
+    }
+
+    // share of the last computer move's beta cutoffs that came from the first move searched
+    public double getLastFirstCutoffRate() {
+        return lastFirstCutoffRate;
+    }
+
+    // writes text to the game record if there is one
+    private void write(String text) throws IOException {
+        if (bw != null)
+            bw.write(text);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // returns the symbol in a slot of the current board
+    public char getSlot(int i, int j) {
+        return get(board, i, j);
+    }
+
+    public boolean isFull() {
+        return full(board);
+    }
+
+    // returns a side's score on the current board
+    public int getScore(char symbol) {
+        return board.score[side(symbol)];
+    }
+
+    // returns the transposition table so its counters can be read
+    public TranspositionTable getTable() {
+        return table;
     }
 
     // displays a board
     private void displayBoard(Board board) throws IOException
     {
+        if (bw == null)
+            return;
+
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                System.out.print(board.array[i][j]);
-                bw.write(board.array[i][j]);
+                char slot = get(board, i, j);
+                System.out.print(slot);
+                bw.write(slot);
             }
             System.out.println();
             bw.write("\n");
@@ -0,0 +1,242 @@
+/*
+ * DESC: times the pieces of the Game engine on fixed, seeded positions so every engine change can be checked for
+ *       regressions. the benchmarks are evaluate (scoring a board from scratch), generate (listing and ordering the
+ *       moves of a node), copy (copying a board), minmax (one fixed depth negamax call on one thread) and computerMove
+ *       (a whole bestMove with iterative deepening, as EnginePlayer asks for it) on 3x3 to 7x7 boards, the two
+ *       searches at several depths. searches start from an empty table, cleared outside the timed part. each benchmark
+ *       is warmed up and then timed over several iterations, and reports time per operation with its spread, bytes
+ *       allocated per operation and garbage collections while it was timed, read from the JVM's management beans
+ *       the positions give both sides runs of two, three and four pieces, so evaluate goes through the scoring
+ * USAGE: java GameBenchmark [benchmark or "all"] [results file] [baseline file]
+ *        results are written to the results file (benchmark-results.txt by default) in the same format as
+ *        benchmark-baseline.txt. when a baseline file is given every result is compared with its baseline line and
+ *        marked when it is more than 10% slower and further off than the two spreads together, or when its check
+ *        value differs, meaning the engine now computes something else and the times are not comparable
+ *        the JVM is left alone so a profiler can be attached as usual, e.g. with -XX:+UnlockDiagnosticVMOptions
+ *        -XX:+DebugNonSafepoints, and naming one benchmark keeps the profile to that code
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class GameBenchmark {
+    private static final int MIN_SIZE = 3;
+    private static final int MAX_SIZE = 7;
+    private static final int[] DEPTHS = {2, 4, 6};  // search depths timed on every board size
+    private static final int WARMUP = 3;            // iterations run before timing
+    private static final int ITERATIONS = 5;        // timed iterations
+    private static final long ITERATION_MILLIS = 300; // least time an iteration keeps repeating its benchmark for
+    private static final int KERNEL_TIMES = 1000;   // operations per call of a kernel, so the clock is not timed
+    private static final int TABLE_MB = 4;
+    private static final long SEED = 1;
+    private static final double REGRESSION = 1.10;  // slowdown over the baseline that gets reported
+    private static final String RESULTS = "benchmark-results.txt";
+
+    private static long sink; // checksums end up here so the JIT has to compute them
+
+    // Operation interface (inner interface). one call of a benchmark on a game. returns a checksum of its results
+    private interface Operation {
+        long run(Game game, int depth);
+    }
+
+    // Result class (inner class). the measurements of one benchmark on one board size and depth
+    private static class Result {
+        private String name;
+        private int size;
+        private int depth;
+        private double nanos;  // mean time per operation over the timed iterations
+        private double error;  // standard deviation of the iterations' times per operation
+        private double bytes;  // bytes allocated per operation
+        private long gcs;      // garbage collections while timing
+        private long gcMillis; // time they took
+        private long check;    // checksum of the first call, the same on every run unless the engine's results change
+
+        private String key() {
+            return name + " " + size + " " + depth;
+        }
+
+        private String line() {
+            return String.format(Locale.ROOT, "%-12s %4d %5d %14.1f %10.1f %12.1f %5d %7d %20d",
+                                 name, size, depth, nanos, error, bytes, gcs, gcMillis, check);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String only = args.length > 0 ? args[0] : "all";
+        String output = args.length > 1 ? args[1] : RESULTS;
+        Map<String, String[]> baseline = args.length > 2 ? readBaseline(args[2]) : null;
+
+        String header = String.format(Locale.ROOT, "# %-10s %4s %5s %14s %10s %12s %5s %7s %20s",
+                                      "benchmark", "size", "depth", "ns/op", "error", "bytes/op", "gcs", "gc ms", "check");
+        System.out.println(header);
+
+        List<Result> results = new ArrayList<Result>();
+        int slower = 0;
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            List<Result> sizeResults = new ArrayList<Result>();
+            if (only.equals("all") || only.equals("evaluate"))
+                sizeResults.add(measure("evaluate", size, 0, KERNEL_TIMES, false,
+                                        (game, depth) -> game.benchEvaluate(KERNEL_TIMES)));
+            if (only.equals("all") || only.equals("generate"))
+                sizeResults.add(measure("generate", size, 0, KERNEL_TIMES, false,
+                                        (game, depth) -> game.benchGenerate(KERNEL_TIMES)));
+            if (only.equals("all") || only.equals("copy"))
+                sizeResults.add(measure("copy", size, 0, KERNEL_TIMES, false,
+                                        (game, depth) -> game.benchCopy(KERNEL_TIMES)));
+
+            for (int depth : DEPTHS) {
+                if (only.equals("all") || only.equals("minmax"))
+                    sizeResults.add(measure("minmax", size, depth, 1, true,
+                                            (game, d) -> game.benchMinmax(d) * 1000003L + game.getLastNodes()));
+                if (only.equals("all") || only.equals("computerMove"))
+                    sizeResults.add(measure("computerMove", size, depth, 1, true,
+                                            (game, d) -> game.bestMove(Game.COMPUTER, d, Long.MAX_VALUE) * 1000003L
+                                                         + game.getLastNodes()));
+            }
+
+            for (Result result : sizeResults) {
+                String[] base = baseline == null ? null : baseline.get(result.key());
+                System.out.println(result.line() + compare(result, base));
+                if (base != null && slower(result, base))
+                    slower++;
+            }
+            results.addAll(sizeResults);
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            out.println(header);
+            for (Result result : results)
+                out.println(result.line());
+        }
+        System.out.println("wrote " + results.size() + " results to " + output);
+        if (baseline != null)
+            System.out.println(slower + " benchmarks more than " + Math.round(100 * (REGRESSION - 1))
+                               + "% slower than the baseline");
+    }
+
+    // warms a benchmark up and times it on a seeded position of one board size, with runs for both sides
+    private static Result measure(String name, int size, int depth, int perCall, boolean clear, Operation operation) {
+        Game game = new Game(size, null, null, TABLE_MB);
+        game.runPosition(size, SEED + size);
+
+        Result result = new Result();
+        result.name = name;
+        result.size = size;
+        result.depth = depth;
+        if (clear)
+            game.clearSearch();
+        result.check = operation.run(game, depth);
+
+        for (int n = 0; n < WARMUP; n++)
+            iteration(game, depth, perCall, clear, operation);
+
+        // allocation is counted on this thread, which is the only one searching
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcs = -collections();
+        long gcMillis = -collectionMillis();
+        long allocated = -threads.getCurrentThreadAllocatedBytes();
+        double[] times = new double[ITERATIONS];
+        long operations = 0;
+        for (int n = 0; n < ITERATIONS; n++) {
+            long[] timed = iteration(game, depth, perCall, clear, operation);
+            times[n] = (double) timed[0] / timed[1];
+            operations += timed[1];
+        }
+        allocated += threads.getCurrentThreadAllocatedBytes();
+        gcs += collections();
+        gcMillis += collectionMillis();
+
+        double mean = 0;
+        for (double time : times)
+            mean += time / ITERATIONS;
+        double variance = 0;
+        for (double time : times)
+            variance += (time - mean) * (time - mean) / Math.max(ITERATIONS - 1, 1);
+
+        result.nanos = mean;
+        result.error = Math.sqrt(variance);
+        result.bytes = (double) allocated / operations;
+        result.gcs = gcs;
+        result.gcMillis = gcMillis;
+        return result;
+    }
+
+    // calls a benchmark until ITERATION_MILLIS have passed. only the calls themselves are timed, not clearing the
+    // table before each. returns the nanoseconds timed and the number of operations
+    private static long[] iteration(Game game, int depth, int perCall, boolean clear, Operation operation) {
+        long end = System.nanoTime() + ITERATION_MILLIS * 1000000;
+        long timed = 0;
+        long operations = 0;
+
+        do {
+            if (clear)
+                game.clearSearch();
+            long start = System.nanoTime();
+            sink += operation.run(game, depth);
+            timed += System.nanoTime() - start;
+            operations += perCall;
+        } while (System.nanoTime() < end);
+
+        return new long[] { timed, operations };
+    }
+
+    // garbage collections so far, over every collector
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(collector.getCollectionCount(), 0);
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(collector.getCollectionTime(), 0);
+        return millis;
+    }
+
+    // reads a results file, keyed by benchmark, size and depth
+    private static Map<String, String[]> readBaseline(String file) throws IOException {
+        Map<String, String[]> baseline = new HashMap<String, String[]>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+                if (line.startsWith("#") || fields.length < 9)
+                    continue;
+                baseline.put(fields[0] + " " + fields[1] + " " + fields[2], fields);
+            }
+        }
+        return baseline;
+    }
+
+    // whether a result is more than REGRESSION times its baseline, by more than the two spreads together, so a noisy
+    // iteration on either side is not reported
+    private static boolean slower(Result result, String[] base) {
+        double nanos = Double.parseDouble(base[3]);
+        double error = Double.parseDouble(base[4]);
+        return result.nanos > REGRESSION * nanos && result.nanos - nanos > result.error + error;
+    }
+
+    // how a result compares with its baseline line, empty when there is none
+    private static String compare(Result result, String[] base) {
+        if (base == null)
+            return "";
+
+        String text = String.format(Locale.ROOT, "  x%.2f", result.nanos / Double.parseDouble(base[3]));
+        if (slower(result, base))
+            text += " SLOWER";
+        if (result.check != Long.parseLong(base[8]))
+            text += " CHANGED";
+        return text;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * DESC: append-only binary record of finished games, for logging many self-play games without slowing them down.
+ *       a game hands its moves over once it ends and goes on, and a background thread writes the games that pile up
+ *       in a bounded queue in batches, flushing once per batch. when the queue is full the game waits for the writer,
+ *       so a slow disk holds the games back instead of filling memory. JournalPrinter turns a journal back into text
+ * FORMAT: header of MAGIC (int) and VERSION (int), then one record per game: board size (byte), number of moves
+ *         (short), and each move as its slot i * size + j, one byte per move on boards of up to 16x16 and a short
+ *         per move on larger ones. the player moves first, so the side of each move is known from its position
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class GameJournal implements Closeable {
+    public static final int MAGIC = 0x4D4D4A4E; // "MMJN"
+    public static final int VERSION = 1;
+    private static final int QUEUE = 4096;        // games waiting to be written before record waits
+    private static final int BATCH = 512;         // most games written between two flushes
+    private static final int BUFFER = 1 << 16;
+    private static final int BYTE_SLOTS = 256;    // boards with at most this many slots store a move in one byte
+    private static final byte[] END = new byte[0]; // queued by close to stop the writer
+
+    private BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE);
+    private DataOutputStream out;
+    private Thread writer;
+    private volatile IOException failure; // first write error, reported to the games and to close
+    private volatile long written;        // games written so far
+
+    // Entry class (inner class). one game read back from a journal
+    public static class Entry {
+        private int size;
+        private int[] moves;
+
+        private Entry(int size, int[] moves) {
+            this.size = size;
+            this.moves = moves;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        // slots played, the player's move first
+        public int[] getMoves() {
+            return moves;
+        }
+    }
+
+    // opens a journal for appending, writing the header if the file is new, and starts its writer thread. a run
+    // stopped while writing can leave part of a game at the end of the file, which would garble every game appended
+    // after it, so the file is cut back to its last whole game first
+    public GameJournal(String file) throws IOException {
+        File journal = new File(file);
+        if (journal.length() > 0) {
+            long complete = completeLength(journal, file);
+            if (complete < journal.length()) {
+                try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(complete);
+                }
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true), BUFFER));
+        }
+        else {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal), BUFFER));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        writer = new Thread(this::write, "journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // queues one game for writing. waits while the queue is full
+    public void record(int size, int[] moves, int count) throws IOException {
+        if (failure != null)
+            throw new IOException("journal could not be written", failure);
+
+        boolean bytes = size * size <= BYTE_SLOTS;
+        byte[] entry = new byte[3 + (bytes ? count : 2 * count)];
+        entry[0] = (byte) size;
+        entry[1] = (byte) (count >>> 8);
+        entry[2] = (byte) count;
+        for (int k = 0, at = 3; k < count; k++) {
+            if (!bytes)
+                entry[at++] = (byte) (moves[k] >>> 8);
+            entry[at++] = (byte) moves[k];
+        }
+
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the journal");
+        }
+    }
+
+    // writer thread: takes whatever games are waiting, up to BATCH, writes them and flushes once. after a write error
+    // games are still taken off the queue, so nobody waits on it forever, but they are dropped
+    private void write() {
+        List<byte[]> batch = new ArrayList<byte[]>(BATCH);
+        boolean end = false;
+
+        while (!end) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, BATCH - 1);
+
+            try {
+                for (byte[] entry : batch) {
+                    if (entry == END)
+                        end = true;
+                    else if (failure == null)
+                        out.write(entry);
+                }
+                if (failure == null)
+                    out.flush();
+                written += batch.size() - (end ? 1 : 0);
+            } catch (IOException e) {
+                failure = e;
+            }
+            batch.clear();
+        }
+    }
+
+    // writes every queued game, stops the writer and closes the file
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing the journal");
+        } finally {
+            out.close();
+        }
+
+        if (failure != null)
+            throw new IOException("journal could not be written", failure);
+    }
+
+    // games handed to the writer and written, not counting games written before the journal was opened
+    public long getWritten() {
+        return written;
+    }
+
+    // length of a journal up to the end of its last whole game
+    private static long completeLength(File journal, String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), BUFFER))) {
+            readHeader(in, file);
+            long complete = 2 * Integer.BYTES;
+            byte[] moves = new byte[2 * 0xFFFF];
+            while (true) {
+                try {
+                    int size = in.readUnsignedByte();
+                    int count = in.readUnsignedShort();
+                    int length = size * size <= BYTE_SLOTS ? count : 2 * count;
+                    in.readFully(moves, 0, length);
+                    complete += 3 + length;
+                } catch (EOFException e) {
+                    return complete;
+                }
+            }
+        }
+    }
+
+    // checks the header at the start of a journal
+    public static void readHeader(DataInputStream in, String file) throws IOException {
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(file + " is not a version " + VERSION + " journal");
+        } catch (EOFException e) {
+            throw new IOException(file + " is not a version " + VERSION + " journal");
+        }
+    }
+
+    // reads the next game of a journal whose header was read, or returns null at the end. a game cut short by a
+    // stopped run is treated as the end
+    public static Entry read(DataInputStream in) throws IOException {
+        try {
+            int size = in.readUnsignedByte();
+            int count = in.readUnsignedShort();
+            int[] moves = new int[count];
+            for (int k = 0; k < count; k++)
+                moves[k] = size * size <= BYTE_SLOTS ? in.readUnsignedByte() : in.readUnsignedShort();
+            return new Entry(size, moves);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * DESC: hosts many games at once over a line-based socket protocol on the loopback address. every connection is a
+ *       session on its own virtual thread, so idle sessions waiting for their client cost almost nothing, while engine
+ *       searches run on a fixed pool of one platform thread per core so they never outnumber the cores
+ * PROTOCOL: the server sends "READY" on connect. then, one command per line:
+ *           NEW <size> [millis]  starts a game with the computer searching millis per move (200 by default), "OK <size>"
+ *           MOVE <i> <j>         the player's move. answered with the computer's "MOVE <i> <j>", and "END <player score>
+ *                                <computer score>" once the board is full
+ *           STATS                "STATS <moves> <mean ms> <p50 ms> <p99 ms> <max ms>" for the computer moves of the session
+ *           QUIT                 closes the session
+ *           anything out of place is answered with "ERR <reason>" and ignored
+ * USAGE: java GameServer [port] [search threads] [table megabytes per board size]
+ */
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class GameServer {
+    public static final int PORT = 4040;
+    private static final long MOVE_TIME = 200; // default search time per computer move
+    private static final int MAX_BOARD = 32;   // largest board a client may ask for
+
+    private ExecutorService cpu;  // runs the engine searches of every session
+    private int tableMegabytes;
+    private Map<Integer, TranspositionTable> tables = new ConcurrentHashMap<Integer, TranspositionTable>(); // by board size
+
+    // Session class (inner class). one client connection and the game it is playing
+    private class Session implements Runnable {
+        private Socket socket;
+        private BufferedReader in;
+        private PrintWriter out;
+        private long[] nanos = new long[64]; // time to answer each player move, from the move arriving to the reply
+        private int moves;
+
+        private Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (Socket s = socket) {
+                in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII), true);
+                out.println("READY");
+
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("QUIT"))
+                        break;
+                    else if (words[0].equals("STATS"))
+                        out.println(stats());
+                    else if (words[0].equals("NEW") && words.length >= 2)
+                        playGame(words);
+                    else
+                        out.println("ERR expected NEW, STATS or QUIT");
+                }
+            } catch (EOFException e) {
+                // the client quit in the middle of a game
+            } catch (IOException e) {
+                // the connection dropped, nothing left to answer
+            }
+        }
+
+        // plays one game. the session's thread reads the player's moves inside Game.play and hands the computer's
+        // searches to the shared pool
+        private void playGame(String[] words) throws IOException {
+            int size;
+            long millis;
+            try {
+                size = Integer.parseInt(words[1]);
+                millis = words.length > 2 ? Long.parseLong(words[2]) : MOVE_TIME;
+            } catch (NumberFormatException e) {
+                out.println("ERR bad number");
+                return;
+            }
+            if (size < 1 || size > MAX_BOARD || millis < 1) {
+                out.println("ERR size must be 1 to " + MAX_BOARD + " and millis at least 1");
+                return;
+            }
+
+            TranspositionTable table = tables.computeIfAbsent(size, k -> new TranspositionTable(tableMegabytes));
+            Game game = new Game(size, new ClientPlayer(), new ServerEngine(), table);
+            game.setMoveTime(millis);
+            out.println("OK " + size);
+
+            game.play();
+            out.println("END " + game.getScore(Game.PLAYER) + " " + game.getScore(Game.COMPUTER));
+        }
+
+        // computer move count and latency percentiles of the session
+        private String stats() {
+            if (moves == 0)
+                return "STATS 0 0 0 0 0";
+
+            long[] sorted = Arrays.copyOf(nanos, moves);
+            long total = 0;
+            for (long n : sorted)
+                total += n;
+            Arrays.sort(sorted);
+
+            return String.format("STATS %d %.3f %.3f %.3f %.3f", moves, total / 1e6 / moves,
+                                 sorted[(moves - 1) / 2] / 1e6, sorted[(int) Math.ceil(0.99 * moves) - 1] / 1e6,
+                                 sorted[moves - 1] / 1e6);
+        }
+
+        // ClientPlayer class (inner class). reads the player's moves from the client and answers other commands
+        // that come in meanwhile
+        private class ClientPlayer implements Player {
+            @Override
+            public int move(Game game, char symbol) throws IOException {
+                int size = game.getSize();
+                while (true) {
+                    String line = in.readLine();
+                    if (line == null)
+                        throw new EOFException();
+
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("QUIT"))
+                        throw new EOFException();
+                    if (words[0].equals("STATS")) {
+                        out.println(stats());
+                        continue;
+                    }
+                    if (!words[0].equals("MOVE") || words.length != 3) {
+                        out.println("ERR expected MOVE <i> <j>");
+                        continue;
+                    }
+
+                    try {
+                        int i = Integer.parseInt(words[1]);
+                        int j = Integer.parseInt(words[2]);
+                        if (i < 0 || i >= size || j < 0 || j >= size || game.getSlot(i, j) != Game.EMPTY)
+                            out.println("ERR slot is taken or off the board");
+                        else
+                            return i * size + j;
+                    } catch (NumberFormatException e) {
+                        out.println("ERR bad number");
+                    }
+                }
+            }
+        }
+
+        // ServerEngine class (inner class). runs the computer's search on the shared pool, sends the move and
+        // records how long the player waited for it
+        private class ServerEngine implements Player {
+            private EnginePlayer engine = new EnginePlayer();
+
+            @Override
+            public int move(Game game, char symbol) throws IOException {
+                long start = System.nanoTime();
+                int move;
+                try {
+                    move = cpu.submit(() -> engine.move(game, symbol)).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while searching", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("search failed", e.getCause());
+                }
+
+                out.println("MOVE " + move / game.getSize() + " " + move % game.getSize());
+                if (moves == nanos.length)
+                    nanos = Arrays.copyOf(nanos, 2 * moves);
+                nanos[moves++] = System.nanoTime() - start;
+                return move;
+            }
+        }
+    }
+
+    private GameServer(int threads, int tableMegabytes) {
+        this.cpu = Executors.newFixedThreadPool(threads);
+        this.tableMegabytes = tableMegabytes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int tableMegabytes = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        new GameServer(threads, tableMegabytes).serve(port);
+    }
+
+    // accepts connections until the process is stopped, starting a virtual thread for each
+    private void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress())) {
+            System.out.println("listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                Thread.ofVirtual().name("session").start(new Session(socket));
+            }
+        }
+    }
+}
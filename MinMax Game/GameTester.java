@@ -1,28 +1,466 @@
-/*
- * DESC: this file tests the MinMax game playing function. It takes board size input and file output. A copy of the game is written to the output file
- */
-
-import java.io.IOException;
-import java.util.Scanner;
-
-public class GameTester {
-   public static void main(String[] args)
-   {
-      // getting board and file input
-      Scanner scanner = new Scanner(System.in);
-      System.out.println("Enter size of board for game: ");
-      int size = scanner.nextInt();
-      System.out.println("Enter name of output file");
-      String otp = scanner.next();
-
-      // playing tic-tac game
-	   try {
-         Game t = new Game(size, otp);
-         t.play();
-      } catch (IOException e) {
-         e.printStackTrace();
-      }
-
-      scanner.close();
-   }
-}
+/*
+ * DESC: this file tests the MinMax game playing function. It takes board size input and file output. A copy of the game is written to the output file
+ *       run with the argument "verify" to check the incremental scoring against a full evaluation on random boards instead
+ *       run with the argument "speedup" to time fixed-depth searches on 4x4 to 7x7 boards with 1 to 32 search threads
+ *       run with the argument "symmetry" to count nodes searched on empty and near-empty boards with and without symmetry
+ *       run with the argument "ordering" to compare nodes, branching factor and first move cutoffs with and without move ordering
+ *       run with the arguments "mcts [games per side] [millis per move]" to play Monte Carlo tree search against the minmax
+ *       search on 6x6 to 10x10 boards and report its win rate and playouts per second, then run one search past the limit
+ *       on the size of its tree
+ *       run with the argument "locality" to compare the depth reached in a second on 7x7 to 13x13 boards when every slot is
+ *       searched, when slots near pieces are searched first, and when far slots are pruned
+ *       run with the argument "stats" to print the JSON search counters of every computer move of a 6x6 game against
+ *       random moves, then the game's totals and the process totals read back over JMX
+ *       run with the arguments "ponder [think millis]" to time the computer's moves against a player that thinks for a
+ *       while before each move, with pondering off and on
+ *       run with the arguments "journal [games]" to play the same random games with a text record per game and into
+ *       one binary journal, compare the time and space they take, and check the journal prints back to the same text,
+ *       also after it is cut inside its last game and reopened
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Scanner;
+
+public class GameTester {
+   // ThinkingPlayer class (inner class). plays random moves, but only after thinking for a while like a person would
+   private static class ThinkingPlayer implements Player {
+      private RandomPlayer player;
+      private long think; // milliseconds before each move
+
+      private ThinkingPlayer(long seed, long think) {
+         player = new RandomPlayer(seed);
+         this.think = think;
+      }
+
+      @Override
+      public int move(Game game, char symbol) throws IOException {
+         try {
+            Thread.sleep(think);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         return player.move(game, symbol);
+      }
+   }
+
+   // TimedPlayer class (inner class). records how long each move of the player it wraps takes
+   private static class TimedPlayer implements Player {
+      private Player player;
+      private long[] nanos = new long[64 * 64];
+      private int moves;
+
+      private TimedPlayer(Player player) {
+         this.player = player;
+      }
+
+      @Override
+      public int move(Game game, char symbol) throws IOException {
+         long start = System.nanoTime();
+         int move = player.move(game, symbol);
+         nanos[moves++] = System.nanoTime() - start;
+         return move;
+      }
+   }
+
+   private static final int VERIFY_SIZE = 11;        // largest board checked by verify
+   private static final int VERIFY_SEQUENCES = 2000; // random move sequences per board size
+   private static final int[] SPEEDUP_THREADS = {1, 2, 4, 8, 16, 32};
+   private static final int[] SPEEDUP_DEPTHS = {0, 0, 0, 0, 12, 9, 7, 6};    // search depth for each board size
+   private static final int[] SYMMETRY_DEPTHS = {0, 0, 0, 9, 12, 9, 7, 6};   // search depth for each board size
+   private static final int MCTS_GAMES = 2;   // games per board size with Monte Carlo tree search on each side
+   private static final long MCTS_MILLIS = 50; // time per move for both searches
+   private static final long LOCALITY_MILLIS = 1000; // time per search in locality
+   private static final long PONDER_THINK = 400; // default time the simulated player thinks before each move
+   private static final int[] ORDERING_DEPTHS = {0, 0, 0, 9, 12, 9, 7, 6};   // search depth for each board size
+   private static final int JOURNAL_GAMES = 500; // default games played each way by journal
+   private static final int JOURNAL_SIZE = 8;    // board size of those games
+
+   public static void main(String[] args)
+   {
+      if (args.length > 0 && args[0].equals("verify")) {
+         verify();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("speedup")) {
+         speedup();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("symmetry")) {
+         symmetry();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("ordering")) {
+         ordering();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("stats")) {
+         stats();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("locality")) {
+         locality();
+         return;
+      }
+      if (args.length > 0 && args[0].equals("ponder")) {
+         ponder(args.length > 1 ? Long.parseLong(args[1]) : PONDER_THINK);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("journal")) {
+         journal(args.length > 1 ? Integer.parseInt(args[1]) : JOURNAL_GAMES);
+         return;
+      }
+      if (args.length > 0 && args[0].equals("mcts")) {
+         mcts(args.length > 1 ? Integer.parseInt(args[1]) : MCTS_GAMES,
+              args.length > 2 ? Long.parseLong(args[2]) : MCTS_MILLIS);
+         return;
+      }
+
+      // getting board and file input
+      Scanner scanner = new Scanner(System.in);
+      System.out.println("Enter size of board for game: ");
+      int size = scanner.nextInt();
+      System.out.println("Enter name of output file");
+      String otp = scanner.next();
+
+      // playing tic-tac game
+	   try {
+         Game t = new Game(size, otp);
+         t.play();
+         System.out.println(t.getTable());
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+
+      scanner.close();
+   }
+
+   // checks incremental scores against evaluate() on every board size up to VERIFY_SIZE
+   private static void verify()
+   {
+      try {
+         File scratch = File.createTempFile("verify", ".txt");
+         scratch.deleteOnExit();
+
+         for (int size = 1; size <= VERIFY_SIZE; size++) {
+            Game t = new Game(size, scratch.getPath(), 1);
+            int checked = t.verifyScores(VERIFY_SEQUENCES, size);
+            System.out.println(size + "x" + size + ": " + checked + " positions match");
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // times the same fixed-depth searches with each thread count and checks every thread count picks the same moves
+   private static void speedup()
+   {
+      try {
+         File scratch = File.createTempFile("speedup", ".txt");
+         scratch.deleteOnExit();
+
+         for (int size = 4; size <= 7; size++) {
+            Game t = new Game(size, scratch.getPath(), 8);
+            long single = 0;
+            int[] expected = new int[4];
+
+            // warms up the JIT with one untimed single thread pass
+            t.getTable().clear();
+            t.randomPosition(0, size);
+            t.searchDepth(SPEEDUP_DEPTHS[size]);
+
+            for (int threads : SPEEDUP_THREADS) {
+               t.setThreads(threads);
+               long nodes = 0;
+               long start = System.nanoTime();
+               boolean same = true;
+
+               // searches positions with 0 to 3 pieces per side from an empty table
+               for (int pieces = 0; pieces < expected.length; pieces++) {
+                  t.getTable().clear();
+                  t.randomPosition(pieces, size * 31 + pieces);
+                  int move = t.searchDepth(SPEEDUP_DEPTHS[size]);
+                  nodes += t.getLastNodes();
+
+                  if (threads == 1)
+                     expected[pieces] = move;
+                  same &= move == expected[pieces];
+               }
+
+               long time = System.nanoTime() - start;
+               if (threads == 1)
+                  single = time;
+               System.out.println(String.format("%dx%d depth %d, %2d threads: %6d ms, %9d nodes, speedup %.2f%s",
+                  size, size, SPEEDUP_DEPTHS[size], threads, time / 1000000, nodes, (double) single / time,
+                  same ? "" : ", DIFFERENT MOVES"));
+            }
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // searches the same positions with symmetry pruning off and on and compares the nodes searched
+   private static void symmetry()
+   {
+      try {
+         File scratch = File.createTempFile("symmetry", ".txt");
+         scratch.deleteOnExit();
+
+         for (int size = 3; size <= 7; size++) {
+            Game t = new Game(size, scratch.getPath(), 8);
+
+            // an empty board, then boards with 1 and 2 pieces per side
+            for (int pieces = 0; pieces <= 2; pieces++) {
+               long[] nodes = new long[2];
+               int[] moves = new int[2];
+
+               for (int on = 0; on < 2; on++) {
+                  t.setSymmetry(on == 1);
+                  t.getTable().clear();
+                  t.randomPosition(pieces, size * 17 + pieces);
+                  moves[on] = t.searchDepth(SYMMETRY_DEPTHS[size]);
+                  nodes[on] = t.getLastNodes();
+               }
+
+               System.out.println(String.format("%dx%d depth %d, %d pieces per side: %9d nodes without symmetry, %9d with, %.1fx fewer%s",
+                  size, size, SYMMETRY_DEPTHS[size], pieces, nodes[0], nodes[1], (double) nodes[0] / nodes[1],
+                  moves[0] == moves[1] ? "" : ", DIFFERENT MOVES"));
+            }
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // searches the same positions with killer, history and centrality ordering off and on and compares the search effort
+   private static void ordering()
+   {
+      try {
+         File scratch = File.createTempFile("ordering", ".txt");
+         scratch.deleteOnExit();
+
+         for (int size = 3; size <= 7; size++) {
+            Game t = new Game(size, scratch.getPath(), 8);
+
+            for (int pieces = 0; pieces <= 2; pieces++) {
+               String[] lines = new String[2];
+               int[] moves = new int[2];
+
+               for (int on = 0; on < 2; on++) {
+                  t.setOrdering(on == 1);
+                  t.getTable().clear();
+                  t.randomPosition(pieces, size * 17 + pieces);
+                  moves[on] = t.searchDepth(ORDERING_DEPTHS[size]);
+                  lines[on] = String.format("%9d nodes, branching %5.2f, first move cutoffs %3.0f%%",
+                     t.getLastNodes(), t.getLastBranching(), 100 * t.getLastFirstCutoffRate());
+               }
+
+               System.out.println(String.format("%dx%d depth %d, %d pieces per side: without ordering %s | with %s%s",
+                  size, size, ORDERING_DEPTHS[size], pieces, lines[0], lines[1],
+                  moves[0] == moves[1] ? "" : ", DIFFERENT MOVES"));
+            }
+         }
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // plays Monte Carlo tree search against the minmax search with the same time per move, each side taking turns to
+   // move first. every game starts from a different position with one random piece per side
+   private static void mcts(int games, long millis)
+   {
+      try {
+         for (int size = 6; size <= 10; size++) {
+            int wins = 0;
+            int ties = 0;
+            long playouts = 0;
+            long nanos = 0;
+
+            for (int g = 0; g < 2 * games; g++) {
+               MctsPlayer mcts = new MctsPlayer(0, millis);
+               EnginePlayer engine = new EnginePlayer(size * size, millis);
+               boolean mctsFirst = g % 2 == 0;
+
+               Game t = new Game(size, mctsFirst ? mcts : engine, mctsFirst ? engine : mcts, 8);
+               t.randomPosition(1, size * 101 + g / 2);
+               t.play();
+
+               int mctsScore = t.getScore(mctsFirst ? Game.PLAYER : Game.COMPUTER);
+               int engineScore = t.getScore(mctsFirst ? Game.COMPUTER : Game.PLAYER);
+               if (mctsScore > engineScore)
+                  wins++;
+               else if (mctsScore == engineScore)
+                  ties++;
+               playouts += mcts.getPlayouts();
+               nanos += mcts.getNanos();
+            }
+
+            System.out.println(String.format("%dx%d, %d ms per move: tree search wins %d, ties %d, loses %d of %d (%.0f%% win rate), %.0f playouts/s",
+               size, size, millis, wins, ties, 2 * games - wins - ties, 2 * games, 100.0 * wins / (2 * games),
+               playouts / (nanos / 1e9)));
+         }
+
+         // a search given more playouts than its tree may have nodes keeps playing out once the tree stops growing
+         Game t = new Game(7, null, null, 8);
+         t.randomPosition(1, 7);
+         long start = System.nanoTime();
+         int move = t.monteCarloMove(Game.COMPUTER, Game.MAX_TREE_NODES + Game.MAX_TREE_NODES / 2, 600000);
+         System.out.println(String.format("7x7, %d playouts past the %d node tree limit: move %d %d in %.1f s",
+            Game.MAX_TREE_NODES / 2, Game.MAX_TREE_NODES, move / 7, move % 7, (System.nanoTime() - start) / 1e9));
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // plays the engine against a player that thinks before each move, with pondering off and then on, and reports how
+   // long the computer took to answer each move
+   private static void ponder(long think)
+   {
+      for (int size = 5; size <= 7; size++) {
+         for (int on = 0; on < 2; on++) {
+            TimedPlayer computer = new TimedPlayer(new EnginePlayer());
+            Game t = new Game(size, new ThinkingPlayer(size, think), computer, 64);
+            t.setPondering(on == 1);
+            try {
+               t.play();
+            } catch (IOException e) {
+               e.printStackTrace();
+            }
+            t.setPondering(false);
+
+            long[] nanos = Arrays.copyOf(computer.nanos, computer.moves);
+            long total = 0;
+            for (long n : nanos)
+               total += n;
+            Arrays.sort(nanos);
+            System.out.println(String.format("%dx%d, pondering %s: %d computer moves, mean %.1f ms, median %.1f ms, max %.1f ms, %d pondered",
+               size, size, on == 1 ? "on " : "off", nanos.length, total / 1e6 / nanos.length,
+               nanos[nanos.length / 2] / 1e6, nanos[nanos.length - 1] / 1e6, t.getPonderHits()));
+         }
+      }
+   }
+
+   // searches the same positions for a second with each candidate setting and compares how deep they get
+   private static void locality()
+   {
+      String[] names = {"all", "order", "prune"};
+      int[] settings = {Game.CANDIDATES_ALL, Game.CANDIDATES_ORDER, Game.CANDIDATES_PRUNE};
+
+      for (int size = 7; size <= 13; size += 2) {
+         Game t = new Game(size, null, null, 64);
+
+         for (int pieces = 1; pieces <= 3; pieces++) {
+            StringBuilder line = new StringBuilder(String.format("%dx%d, %d pieces per side:", size, size, pieces));
+            for (int k = 0; k < settings.length; k++) {
+               t.setCandidates(settings[k]);
+               t.getTable().clear();
+               t.randomPosition(pieces, size * 13 + pieces);
+               int move = t.bestMove(Game.COMPUTER, size * size, LOCALITY_MILLIS);
+               line.append(String.format("  %s depth %2d, %9d nodes, move %3d |", names[k], t.getLastDepth(),
+                                         t.getLastNodes(), move));
+            }
+            System.out.println(line);
+         }
+      }
+   }
+
+   // plays a headless game with the stats log on, then prints the totals kept by the game and by SearchMetrics
+   private static void stats()
+   {
+      Game t = new Game(6, new RandomPlayer(6), new EnginePlayer(), 16);
+      t.setStatsLog(System.out);
+      try {
+         t.play();
+      } catch (IOException e) {
+         e.printStackTrace();
+      }
+      System.out.println("game total: " + t.getTotalStats().toJson());
+
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(SearchMetrics.NAME);
+         System.out.println(String.format("jmx: %s moves, %s nodes, %s cutoffs, first move cutoff rate %s, table hit rate %s",
+            server.getAttribute(name, "Moves"), server.getAttribute(name, "Nodes"), server.getAttribute(name, "Cutoffs"),
+            server.getAttribute(name, "FirstMoveCutoffRate"), server.getAttribute(name, "TableHitRate")));
+      } catch (JMException e) {
+         e.printStackTrace();
+      }
+   }
+
+   // plays seeded random games twice: once the usual way, each game writing its text record, and once headless into
+   // a journal. compares the time and bytes of both, then prints the journal and checks it matches the text records
+   private static void journal(int games)
+   {
+      PrintStream console = System.out;
+      try {
+         File journalFile = File.createTempFile("journal", ".bin");
+         File printed = File.createTempFile("journal", ".txt");
+         journalFile.deleteOnExit();
+         printed.deleteOnExit();
+         journalFile.delete();
+
+         // text records. the boards Game prints to the console are thrown away so only the record is timed
+         StringBuilder expected = new StringBuilder();
+         long textBytes = 0;
+         System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+         long start = System.nanoTime();
+         for (int n = 0; n < games; n++) {
+            File record = File.createTempFile("record", ".txt");
+            record.deleteOnExit();
+            Game t = new Game(JOURNAL_SIZE, record.getPath(), new RandomPlayer(2 * n), new RandomPlayer(2 * n + 1), 1);
+            t.play();
+            textBytes += record.length();
+            expected.append(n > 0 ? "\n\n" : "").append(new String(Files.readAllBytes(record.toPath())));
+         }
+         long textNanos = System.nanoTime() - start;
+         System.setOut(console);
+
+         // the same games into one journal
+         start = System.nanoTime();
+         try (GameJournal journal = new GameJournal(journalFile.getPath())) {
+            for (int n = 0; n < games; n++) {
+               Game t = new Game(JOURNAL_SIZE, new RandomPlayer(2 * n), new RandomPlayer(2 * n + 1), 1);
+               t.setJournal(journal);
+               t.play();
+            }
+         }
+         long journalNanos = System.nanoTime() - start;
+
+         System.out.println(String.format("%d %dx%d games: text records %d bytes, %.1f ms (reading them back included), "
+                                          + "journal %d bytes, %.1f ms", games, JOURNAL_SIZE, JOURNAL_SIZE, textBytes,
+                                          textNanos / 1e6, journalFile.length(), journalNanos / 1e6));
+
+         JournalPrinter.main(new String[] { journalFile.getPath(), "0", String.valueOf(games), printed.getPath() });
+         boolean same = expected.toString().equals(new String(Files.readAllBytes(printed.toPath())));
+         System.out.println(same ? "printed journal matches the text records" : "printed journal DIFFERS from the text records");
+
+         // a run stopped partway through writing its last game. reopening the journal drops what was written of it, so
+         // the game played again reads back whole
+         try (RandomAccessFile torn = new RandomAccessFile(journalFile, "rw")) {
+            torn.setLength(torn.length() - JOURNAL_SIZE);
+         }
+         try (GameJournal journal = new GameJournal(journalFile.getPath())) {
+            Game t = new Game(JOURNAL_SIZE, new RandomPlayer(2 * games - 2), new RandomPlayer(2 * games - 1), 1);
+            t.setJournal(journal);
+            t.play();
+         }
+         JournalPrinter.main(new String[] { journalFile.getPath(), "0", String.valueOf(games), printed.getPath() });
+         same = expected.toString().equals(new String(Files.readAllBytes(printed.toPath())));
+         System.out.println(same ? "journal cut inside its last game recovers when reopened"
+                                 : "journal cut inside its last game DIFFERS after reopening");
+      } catch (IOException e) {
+         System.setOut(console);
+         e.printStackTrace();
+      }
+   }
+}
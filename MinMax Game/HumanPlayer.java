@@ -0,0 +1,19 @@
+/*
+ * DESC: reads moves as "row column" from System.in. does not account for illegal moves
+ */
+
+import java.util.Scanner;
+
+public class HumanPlayer implements Player {
+    private Scanner scanner = new Scanner(System.in); // kept for the whole game so buffered input is not lost
+
+    @Override
+    public int move(Game game, char symbol) {
+        // prompt player and read input
+        System.out.print("Player move: ");
+        int i = scanner.nextInt();
+        int j = scanner.nextInt();
+
+        return i * game.getSize() + j;
+    }
+}
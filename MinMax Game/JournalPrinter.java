@@ -0,0 +1,84 @@
+/*
+ * DESC: replays the games of a GameJournal and prints each one in the text format Game writes to its output file: every
+ *       move followed by the board, then the scores and the winner. a single game comes out exactly as Game would
+ *       have written it, and several games are separated by a blank line
+ * USAGE: java JournalPrinter <journal file> [first game, from 0] [games, all by default] [output file]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JournalPrinter {
+    private static final int TABLE_MB = 1; // replaying never searches, so the table is never used
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: java JournalPrinter <journal file> [first game, from 0] [games] [output file]");
+            return;
+        }
+        long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        long games = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+        Map<Integer, Game> replays = new HashMap<Integer, Game>(); // one game per board size, reset for every game
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 1 << 16));
+             Writer out = new BufferedWriter(args.length > 3 ? new FileWriter(args[3]) : new OutputStreamWriter(System.out))) {
+            GameJournal.readHeader(in, args[0]);
+
+            long printed = 0;
+            GameJournal.Entry entry = GameJournal.read(in);
+            for (long n = 0; entry != null && printed < games; n++, entry = GameJournal.read(in)) {
+                if (n < first)
+                    continue;
+
+                Game game = replays.computeIfAbsent(entry.getSize(), size -> new Game(size, null, null, TABLE_MB));
+                if (printed++ > 0)
+                    out.write("\n\n");
+                print(game, entry.getMoves(), out);
+            }
+        }
+    }
+
+    // plays a game's moves on an empty board and writes its record
+    private static void print(Game game, int[] moves, Writer out) throws IOException {
+        int size = game.getSize();
+        game.setPosition(moves, 0);
+
+        for (int k = 0; k < moves.length; k++) {
+            char symbol = k % 2 == 0 ? Game.PLAYER : Game.COMPUTER;
+            if (symbol == Game.COMPUTER)
+                out.write("Computer move:\n");
+            else
+                out.write("Player move: " + moves[k] / size + " " + moves[k] % size + "\n");
+
+            game.playMove(moves[k], symbol);
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++)
+                    out.write(game.getSlot(i, j));
+                out.write("\n");
+            }
+            out.write("\n");
+        }
+
+        // a game recorded before its board filled up ends with the board
+        if (!game.isFull())
+            return;
+
+        int playerScore = game.getScore(Game.PLAYER);
+        int computerScore = game.getScore(Game.COMPUTER);
+        out.write(String.format("player scored: %d    computer scored: %d", playerScore, computerScore) + "\n");
+        if (playerScore > computerScore)
+            out.write("player wins!!");
+        else if (playerScore < computerScore)
+            out.write("Computer wins");
+        else
+            out.write("Tie game!");
+    }
+}
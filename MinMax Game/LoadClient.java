@@ -0,0 +1,157 @@
+/*
+ * DESC: load generator for GameServer. opens many sessions at once, each on its own virtual thread, plays random
+ *       moves against the server, and reports moves per second and the latency of the computer's answers as seen by
+ *       the clients, along with the server's own per-session numbers
+ * USAGE: java LoadClient [sessions] [games per session] [board size] [millis per computer move] [port] [seed]
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LoadClient {
+    // Result class (inner class). what one session saw
+    private static class Result {
+        private long[] nanos;       // time from sending each move to reading the computer's answer
+        private double serverMean;  // the server's mean answer time for the session, in milliseconds
+        private int games;
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long millis = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : GameServer.PORT;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        System.out.println(String.format("%d sessions, %d games each, %dx%d, %d ms per computer move",
+                                         sessions, games, size, size, millis));
+
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int n = 0; n < sessions; n++) {
+                long sessionSeed = seed * 1000003 + n;
+                futures.add(clients.submit(() -> session(port, games, size, millis, sessionSeed)));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            report(results, System.nanoTime() - start);
+        }
+    }
+
+    // plays the games of one session with random moves
+    private static Result session(int port, int games, int size, long millis, long seed) throws IOException {
+        Random random = new Random(seed);
+        Result result = new Result();
+        long[] nanos = new long[64];
+        int moves = 0;
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true);
+            expect(in.readLine(), "READY");
+
+            for (int g = 0; g < games; g++) {
+                out.println("NEW " + size + " " + millis);
+                expect(in.readLine(), "OK");
+
+                boolean[] taken = new boolean[size * size];
+                int filled = 0;
+                while (true) {
+                    // a random empty slot
+                    int pick = random.nextInt(size * size - filled);
+                    int move = 0;
+                    while (taken[move] || pick-- > 0)
+                        move++;
+                    taken[move] = true;
+                    filled++;
+
+                    long sent = System.nanoTime();
+                    out.println("MOVE " + move / size + " " + move % size);
+                    String line = in.readLine();
+                    if (line != null && line.startsWith("END"))
+                        break;
+
+                    expect(line, "MOVE");
+                    if (moves == nanos.length)
+                        nanos = Arrays.copyOf(nanos, 2 * moves);
+                    nanos[moves++] = System.nanoTime() - sent;
+
+                    String[] words = line.split(" ");
+                    taken[Integer.parseInt(words[1]) * size + Integer.parseInt(words[2])] = true;
+                    filled++;
+                    if (filled == size * size) {
+                        expect(in.readLine(), "END");
+                        break;
+                    }
+                }
+                result.games++;
+            }
+
+            out.println("STATS");
+            String[] stats = in.readLine().split(" ");
+            result.serverMean = Double.parseDouble(stats[2]);
+            out.println("QUIT");
+        }
+
+        result.nanos = Arrays.copyOf(nanos, moves);
+        return result;
+    }
+
+    // throws unless a line from the server starts with the expected word
+    private static void expect(String line, String word) throws IOException {
+        if (line == null || !line.startsWith(word))
+            throw new IOException("expected " + word + " from the server but got " + line);
+    }
+
+    // prints throughput and latency percentiles over every session
+    private static void report(List<Result> results, long elapsed) {
+        int count = 0;
+        int games = 0;
+        double serverMean = 0;
+        for (Result result : results) {
+            count += result.nanos.length;
+            games += result.games;
+            serverMean += result.serverMean;
+        }
+
+        long[] nanos = new long[count];
+        int filled = 0;
+        for (Result result : results) {
+            System.arraycopy(result.nanos, 0, nanos, filled, result.nanos.length);
+            filled += result.nanos.length;
+        }
+        Arrays.sort(nanos);
+
+        System.out.println(String.format("%d games, %d computer moves in %.2f s, %.1f moves/s",
+                                         games, count, elapsed / 1e9, count / (elapsed / 1e9)));
+        if (count > 0)
+            System.out.println(String.format("client latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                                             percentile(nanos, 50), percentile(nanos, 90), percentile(nanos, 99),
+                                             nanos[count - 1] / 1e6));
+        System.out.println(String.format("server latency: mean of session means %.3f ms", serverMean / results.size()));
+    }
+
+    // nearest-rank percentile of sorted times, in milliseconds
+    private static double percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+}
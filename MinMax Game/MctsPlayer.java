@@ -0,0 +1,48 @@
+/*
+ * DESC: plays the move found by the game's Monte Carlo tree search, and keeps count of the random games it played
+ *       and the time it took so playouts per second can be reported
+ */
+
+public class MctsPlayer implements Player {
+    private long playouts; // random games per move, 0 for no limit
+    private long millis;   // time budget per move, 0 to use the game's
+    private long totalPlayouts; // playouts over every move so far
+    private long totalNanos;    // search time over every move so far
+
+    // searches with the game's time budget and no playout limit
+    public MctsPlayer() {
+    }
+
+    // plays at most playouts random games (0 for no limit) in at most millis per move
+    public MctsPlayer(long playouts, long millis) {
+        if (playouts < 0 || millis < 1)
+            throw new IllegalArgumentException("need a playout count of at least 0 and at least one millisecond");
+        if (playouts == 0 && millis == Long.MAX_VALUE)
+            throw new IllegalArgumentException("need a playout or a time limit");
+
+        this.playouts = playouts;
+        this.millis = millis;
+    }
+
+    @Override
+    public int move(Game game, char symbol) {
+        long start = System.nanoTime();
+        int move;
+        if (millis == 0)
+            move = game.monteCarloMove(symbol);
+        else
+            move = game.monteCarloMove(symbol, playouts == 0 ? Long.MAX_VALUE : playouts, millis);
+
+        totalNanos += System.nanoTime() - start;
+        totalPlayouts += game.getLastPlayouts();
+        return move;
+    }
+
+    public long getPlayouts() {
+        return totalPlayouts;
+    }
+
+    public long getNanos() {
+        return totalNanos;
+    }
+}
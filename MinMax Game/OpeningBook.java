@@ -0,0 +1,100 @@
+/*
+ * DESC: read-only table of solved Game positions (opening book and endgame tablebase) stored in a memory-mapped file.
+ *       a position is found by its canonical key, the same symmetry-reduced Zobrist key the search uses,
+ *       and answers with the best move in canonical orientation, so no search is needed
+ * FORMAT: header of MAGIC (int), VERSION (int), board size (int), entry count (int), then the entries sorted by key.
+ *         each entry is the key (long), the best move (short) and its minmax value clamped to a short
+ */
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class OpeningBook {
+    public static final int MAGIC = 0x4D4D424B; // "MMBK"
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 4 * Integer.BYTES;
+    public static final int ENTRY_BYTES = Long.BYTES + 2 * Short.BYTES;
+
+    private MappedByteBuffer buffer; // the whole file, read with absolute gets so lookups are thread safe
+    private int size;                // board size the book was generated for
+    private int entries;             // number of positions
+
+    // maps a book file into memory and checks its header
+    public OpeningBook(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException(file + " is not a version " + VERSION + " book file");
+
+        size = buffer.getInt(8);
+        entries = buffer.getInt(12);
+        if (buffer.limit() != HEADER_BYTES + (long) entries * ENTRY_BYTES)
+            throw new IOException(file + " is truncated");
+    }
+
+    // returns the best move stored for a key in canonical orientation, or -1 when the position is not in the book
+    public int lookup(long key) {
+        int entry = find(key);
+        return entry < 0 ? -1 : buffer.getShort(offset(entry) + Long.BYTES);
+    }
+
+    // returns the value stored for a key. only meaningful when lookup found the key
+    public int value(long key) {
+        int entry = find(key);
+        return entry < 0 ? 0 : buffer.getShort(offset(entry) + Long.BYTES + Short.BYTES);
+    }
+
+    // binary search over the sorted keys. returns the entry index or -1
+    private int find(long key) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = buffer.getLong(offset(middle));
+            if (current < key)
+                low = middle + 1;
+            else if (current > key)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        return -1;
+    }
+
+    private static int offset(int entry) {
+        return HEADER_BYTES + entry * ENTRY_BYTES;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    // writes a book file. keys must be sorted and distinct
+    public static void write(String file, int size, long[] keys, int[] moves, int[] values, int count) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(count);
+
+            for (int k = 0; k < count; k++) {
+                out.writeLong(keys[k]);
+                out.writeShort(moves[k]);
+                out.writeShort(Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, values[k])));
+            }
+        }
+    }
+}
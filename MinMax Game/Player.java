@@ -0,0 +1,10 @@
+/*
+ * DESC: a source of moves for one side of a Game. the game asks for a move whenever it is that side's turn
+ */
+
+import java.io.IOException;
+
+public interface Player {
+    // returns the slot to play for symbol on the game's current board as i * size + j
+    int move(Game game, char symbol) throws IOException;
+}
@@ -0,0 +1,33 @@
+/*
+ * DESC: plays a uniformly random empty slot. seeded so games can be repeated
+ */
+
+import java.util.Random;
+
+public class RandomPlayer implements Player {
+    private Random random;
+
+    public RandomPlayer(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public int move(Game game, char symbol) {
+        int size = game.getSize();
+
+        // counts the empty slots and picks one of them
+        int empty = 0;
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                if (game.getSlot(i, j) == Game.EMPTY)
+                    empty++;
+
+        int pick = random.nextInt(empty);
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                if (game.getSlot(i, j) == Game.EMPTY && pick-- == 0)
+                    return i * size + j;
+
+        throw new IllegalStateException("no empty slot to play");
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * DESC: plays a fixed list of moves in order, for replaying games and setting up regression positions
+ */
+
+public class ScriptedPlayer implements Player {
+    private int[] moves; // slots to play as i * size + j
+    private int next;    // index of the next move
+
+    public ScriptedPlayer(int... moves) {
+        this.moves = moves;
+    }
+
+    @Override
+    public int move(Game game, char symbol) {
+        if (next == moves.length)
+            throw new IllegalStateException("script ran out of moves after " + moves.length);
+
+        return moves[next++];
+    }
+}
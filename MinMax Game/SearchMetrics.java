@@ -0,0 +1,153 @@
+/*
+ * DESC: process wide totals of every Game move searched, published as the JMX MXBean "MinMaxGame:type=SearchMetrics"
+ *       and as one JFR event per move ("minmax.MoveSearch", recorded when a flight recording enables it)
+ */
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public class SearchMetrics implements SearchMetricsMXBean {
+    public static final String NAME = "MinMaxGame:type=SearchMetrics";
+
+    private static final SearchMetrics INSTANCE = new SearchMetrics();
+
+    // MoveEvent class (inner class). one searched move in a flight recording
+    @Name("minmax.MoveSearch")
+    @Label("Move Search")
+    @Category("MinMax Game")
+    public static class MoveEvent extends Event {
+        @Label("Side")
+        String side;
+        @Label("Board Size")
+        int size;
+        @Label("Move")
+        int move;
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("Evaluations")
+        long evaluations;
+        @Label("Table Hits")
+        long tableHits;
+        @Label("Search Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchTime;
+    }
+
+    private long moves;
+    private long nodes;
+    private long cutoffs;
+    private long firstCutoffs;
+    private long evaluations;
+    private long tableProbes;
+    private long tableHits;
+    private long nanos;
+    private String lastMove = "";
+    private boolean registered;
+
+    // adds one searched move to the totals and emits its flight recorder event
+    static void record(char side, int size, int move, int depth, SearchStats stats, String json) {
+        INSTANCE.add(stats, json);
+
+        MoveEvent event = new MoveEvent();
+        if (event.isEnabled()) {
+            event.side = String.valueOf(side);
+            event.size = size;
+            event.move = move;
+            event.depth = depth;
+            event.nodes = stats.getNodes();
+            event.cutoffs = stats.cutoffs;
+            event.evaluations = stats.evaluations;
+            event.tableHits = stats.tableHits;
+            event.searchTime = stats.nanos;
+            event.commit();
+        }
+    }
+
+    // publishes the totals with the platform MBean server, once, and loads the flight recorder and formatting code
+    // record uses. games call it when they are created: the first use of each takes tens to hundreds of milliseconds,
+    // which would otherwise be timed as part of the first move searched
+    static void register() {
+        INSTANCE.publish();
+    }
+
+    private synchronized void publish() {
+        if (registered)
+            return;
+
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NAME));
+        } catch (JMException e) {
+            // another copy of this class already published the totals, or JMX is unavailable
+        }
+        new MoveEvent().isEnabled();
+        new SearchStats(1).toJson();
+    }
+
+    private synchronized void add(SearchStats stats, String json) {
+        moves += stats.moves;
+        nodes += stats.getNodes();
+        cutoffs += stats.cutoffs;
+        firstCutoffs += stats.firstCutoffs;
+        evaluations += stats.evaluations;
+        tableProbes += stats.tableProbes;
+        tableHits += stats.tableHits;
+        nanos += stats.nanos;
+        lastMove = json;
+    }
+
+    public static SearchMetrics get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public synchronized long getMoves() {
+        return moves;
+    }
+
+    @Override
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public synchronized long getCutoffs() {
+        return cutoffs;
+    }
+
+    @Override
+    public synchronized double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstCutoffs / cutoffs;
+    }
+
+    @Override
+    public synchronized long getEvaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public synchronized double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    @Override
+    public synchronized double getSearchSeconds() {
+        return nanos / 1e9;
+    }
+
+    // JSON line of the last move searched anywhere in the process
+    @Override
+    public synchronized String getLastMove() {
+        return lastMove;
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * DESC: what JMX clients can read from SearchMetrics, totals over every Game move searched in the process
+ */
+
+public interface SearchMetricsMXBean {
+    long getMoves();
+
+    long getNodes();
+
+    long getCutoffs();
+
+    double getFirstMoveCutoffRate();
+
+    long getEvaluations();
+
+    double getTableHitRate();
+
+    double getSearchSeconds();
+
+    // JSON line of the last move searched
+    String getLastMove();
+}
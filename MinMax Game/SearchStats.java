@@ -0,0 +1,125 @@
+/*
+ * DESC: counters collected while searching Game moves: nodes at each ply from the root, beta cutoffs, evaluations of
+ *       leaf boards, table probes and hits, and time spent on each root move. each search thread fills its own
+ *       copy, and copies are added up per move and per game
+ * SWITCH: the search only touches the counters behind ENABLED. it is a compile time constant, so setting it to
+ *         false and recompiling leaves no counting code in the search at all
+ */
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public class SearchStats {
+    public static final boolean ENABLED = true;
+
+    // filled in directly by the search, which is in the same package
+    long[] nodes;       // nodes visited at each ply, the root's children being ply 1
+    long cutoffs;       // beta cutoffs
+    long firstCutoffs;  // beta cutoffs caused by the first move searched
+    long evaluations;   // boards scored at the end of the game or at the depth limit
+    long tableProbes;
+    long tableHits;
+    long[] rootNanos;   // time spent searching each root move, by slot
+    long moves;         // moves these counters cover
+    long nanos;         // time spent finding them
+
+    public SearchStats(int slots) {
+        nodes = new long[slots + 1];
+        rootNanos = new long[slots];
+    }
+
+    // adds another set of counters for the same board size to this one
+    public void add(SearchStats other) {
+        for (int ply = 0; ply < nodes.length; ply++)
+            nodes[ply] += other.nodes[ply];
+        for (int slot = 0; slot < rootNanos.length; slot++)
+            rootNanos[slot] += other.rootNanos[slot];
+        cutoffs += other.cutoffs;
+        firstCutoffs += other.firstCutoffs;
+        evaluations += other.evaluations;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        moves += other.moves;
+        nanos += other.nanos;
+    }
+
+    public void clear() {
+        Arrays.fill(nodes, 0);
+        Arrays.fill(rootNanos, 0);
+        cutoffs = firstCutoffs = evaluations = tableProbes = tableHits = moves = nanos = 0;
+    }
+
+    public long getNodes() {
+        long total = 0;
+        for (long n : nodes)
+            total += n;
+        return total;
+    }
+
+    public long getNodes(int ply) {
+        return nodes[ply];
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstCutoffs() {
+        return firstCutoffs;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getRootNanos(int slot) {
+        return rootNanos[slot];
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    // the counters as one line of JSON. plies past the deepest one reached and root moves never searched are left out
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"moves\":").append(moves)
+            .append(",\"millis\":").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6))
+            .append(",\"nodes\":").append(getNodes())
+            .append(",\"nodesByPly\":[");
+        int deepest = nodes.length - 1;
+        while (deepest > 0 && nodes[deepest] == 0)
+            deepest--;
+        for (int ply = 1; ply <= deepest; ply++)
+            json.append(ply > 1 ? "," : "").append(nodes[ply]);
+
+        json.append("],\"cutoffs\":").append(cutoffs)
+            .append(",\"firstMoveCutoffs\":").append(firstCutoffs)
+            .append(",\"evaluations\":").append(evaluations)
+            .append(",\"tableProbes\":").append(tableProbes)
+            .append(",\"tableHits\":").append(tableHits)
+            .append(",\"rootMillis\":{");
+        boolean first = true;
+        for (int slot = 0; slot < rootNanos.length; slot++) {
+            if (rootNanos[slot] == 0)
+                continue;
+            json.append(first ? "" : ",").append('"').append(slot).append("\":")
+                .append(String.format(Locale.ROOT, "%.3f", rootNanos[slot] / 1e6));
+            first = false;
+        }
+
+        return json.append("}}").toString();
+    }
+}
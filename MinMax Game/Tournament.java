@@ -0,0 +1,206 @@
+/*
+ * DESC: plays batches of headless games between two kinds of players on several board sizes at once and reports games
+ *       per second, move latency percentiles for each side, and win/tie counts. nothing is written per move
+ * USAGE: java Tournament [games per size] [smallest size] [largest size] [player] [computer] [workers]
+ *        [book file or none] [journal file]
+ *        a player is "random", "engine" (200 ms per move), "engine:<depth>" or "engine:<depth>:<millis per move>",
+ *        or "mcts" (200 ms per move), "mcts:<playouts>" or "mcts:<playouts, 0 for no limit>:<millis per move>"
+ *        the player side moves first, as in a normal game. a book from BookGenerator is used for games of its size.
+ *        with a journal file every game is appended to it as a GameJournal record, which JournalPrinter prints
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Tournament {
+    private static final int TABLE_MB = 4; // table per game, small so many games fit in memory at once
+
+    // Result class (inner class). outcome and move times of one game
+    private static class Result {
+        private int size;
+        private int playerScore;
+        private int computerScore;
+        private long[][] moveNanos; // move times by side, computer first as in Game
+
+        private Result(int size, int playerScore, int computerScore, long[][] moveNanos) {
+            this.size = size;
+            this.playerScore = playerScore;
+            this.computerScore = computerScore;
+            this.moveNanos = moveNanos;
+        }
+    }
+
+    // TimedPlayer class (inner class). times every move of the player it wraps
+    private static class TimedPlayer implements Player {
+        private Player player;
+        private long[] nanos = new long[16];
+        private int moves;
+
+        private TimedPlayer(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public int move(Game game, char symbol) throws IOException {
+            long start = System.nanoTime();
+            int move = player.move(game, symbol);
+
+            if (moves == nanos.length)
+                nanos = Arrays.copyOf(nanos, 2 * moves);
+            nanos[moves++] = System.nanoTime() - start;
+
+            return move;
+        }
+
+        private long[] times() {
+            return Arrays.copyOf(nanos, moves);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int minSize = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        String player = args.length > 3 ? args[3] : "engine:4";
+        String computer = args.length > 4 ? args[4] : "engine:4";
+        int workers = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        OpeningBook book = args.length > 6 && !args[6].equals("none") ? new OpeningBook(args[6]) : null;
+        GameJournal journal = args.length > 7 ? new GameJournal(args[7]) : null;
+
+        // checks the player descriptions before starting anything
+        createPlayer(player, 0);
+        createPlayer(computer, 0);
+
+        System.out.println(String.format("%d games per size, %dx%d to %dx%d, %s (player) vs %s (computer), %d workers",
+                                         games, minSize, minSize, maxSize, maxSize, player, computer, workers));
+
+        // every game is its own task. seeds depend on size and game number so runs can be repeated
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        long start = System.nanoTime();
+        for (int size = minSize; size <= maxSize; size++) {
+            for (int n = 0; n < games; n++) {
+                int boardSize = size;
+                long seed = (long) size << 32 | n;
+                OpeningBook sizeBook = book != null && book.getSize() == size ? book : null;
+                futures.add(pool.submit(() -> playGame(boardSize, player, computer, sizeBook, journal, seed)));
+            }
+        }
+
+        List<Result> results = new ArrayList<Result>();
+        for (Future<Result> future : futures)
+            results.add(future.get());
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        if (journal != null)
+            journal.close();
+
+        System.out.println(String.format("%d games in %.2f s, %.1f games/s",
+                                         results.size(), elapsed / 1e9, results.size() / (elapsed / 1e9)));
+        for (int size = minSize; size <= maxSize; size++)
+            report(size, results);
+    }
+
+    // plays one headless game and collects its outcome
+    private static Result playGame(int size, String player, String computer, OpeningBook book, GameJournal journal,
+                                   long seed) throws IOException {
+        TimedPlayer timedPlayer = new TimedPlayer(createPlayer(player, seed));
+        TimedPlayer timedComputer = new TimedPlayer(createPlayer(computer, ~seed));
+
+        Game game = new Game(size, timedPlayer, timedComputer, TABLE_MB);
+        game.setBook(book);
+        game.setJournal(journal);
+        game.play();
+
+        return new Result(size, game.getScore(Game.PLAYER), game.getScore(Game.COMPUTER),
+                          new long[][] { timedComputer.times(), timedPlayer.times() });
+    }
+
+    // builds a player from its description
+    private static Player createPlayer(String description, long seed) {
+        String[] parts = description.split(":");
+        switch (parts[0]) {
+            case "random":
+                return new RandomPlayer(seed);
+            case "engine":
+                if (parts.length == 1)
+                    return new EnginePlayer();
+                int depth = Integer.parseInt(parts[1]);
+                long millis = parts.length > 2 ? Long.parseLong(parts[2]) : Long.MAX_VALUE;
+                return new EnginePlayer(depth, millis);
+            case "mcts":
+                if (parts.length == 1)
+                    return new MctsPlayer();
+                long playouts = Long.parseLong(parts[1]);
+                long budget = parts.length > 2 ? Long.parseLong(parts[2]) : Long.MAX_VALUE;
+                return new MctsPlayer(playouts, budget);
+        }
+        throw new IllegalArgumentException("unknown player: " + description);
+    }
+
+    // prints outcomes and move latencies for one board size
+    private static void report(int size, List<Result> results) {
+        int playerWins = 0;
+        int computerWins = 0;
+        int ties = 0;
+        int[] moves = new int[2];
+
+        for (Result result : results) {
+            if (result.size != size)
+                continue;
+
+            if (result.playerScore > result.computerScore)
+                playerWins++;
+            else if (result.playerScore < result.computerScore)
+                computerWins++;
+            else
+                ties++;
+
+            for (int s = 0; s < 2; s++)
+                moves[s] += result.moveNanos[s].length;
+        }
+
+        // gathers the move times of every game of this size
+        long[][] nanos = { new long[moves[0]], new long[moves[1]] };
+        int[] filled = new int[2];
+        for (Result result : results) {
+            if (result.size != size)
+                continue;
+
+            for (int s = 0; s < 2; s++) {
+                System.arraycopy(result.moveNanos[s], 0, nanos[s], filled[s], result.moveNanos[s].length);
+                filled[s] += result.moveNanos[s].length;
+            }
+        }
+
+        int games = playerWins + computerWins + ties;
+        System.out.println(String.format("%dx%d: player wins %d (%.1f%%), computer wins %d (%.1f%%), ties %d (%.1f%%)",
+            size, size, playerWins, 100.0 * playerWins / games, computerWins, 100.0 * computerWins / games,
+            ties, 100.0 * ties / games));
+        System.out.println("    player   moves " + percentiles(nanos[1]));
+        System.out.println("    computer moves " + percentiles(nanos[0]));
+    }
+
+    // formats the 50th, 90th, 99th percentile and largest of a set of move times in milliseconds
+    private static String percentiles(long[] nanos) {
+        if (nanos.length == 0)
+            return "none";
+
+        Arrays.sort(nanos);
+        return String.format("%d: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms", nanos.length,
+                             percentile(nanos, 50), percentile(nanos, 90), percentile(nanos, 99),
+                             nanos[nanos.length - 1] / 1e6);
+    }
+
+    // nearest-rank percentile of sorted times, in milliseconds
+    private static double percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * DESC: fixed-size transposition table for the MinMax game search. Positions are keyed by a Zobrist hash and each entry
+ *       keeps the remaining search depth, the value, the kind of bound that value is, and the best move found
+ * LAYOUT: entries live in two parallel long arrays (key and packed data) grouped into buckets of two slots. The first
+ *         slot of a bucket keeps the deepest result seen, the second slot is always overwritten, so shallow results
+ *         from the current search can never push out an expensive deep one
+ * THREADS: the table is shared by all search threads without locks. each slot stores key ^ data next to data, so a
+ *          slot that another thread is halfway through writing no longer matches its key and reads as a miss.
+ *          the counters are plain fields and may lose a few increments when several threads search at once
+ */
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+    // bound types
+    public static final int EXACT = 1; // value is the minmax value of the position
+    public static final int LOWER = 2; // search failed high, value is a lower bound
+    public static final int UPPER = 3; // search failed low, value is an upper bound
+
+    public static final long MISS = 0; // returned by probe when the position is not stored
+    public static final int SOLVED = Byte.MAX_VALUE; // depth of a result that was searched to the end of the game
+
+    private static final int ENTRY_BYTES = 2 * Long.BYTES; // key word plus data word
+    private static final int BUCKET = 2;                   // slots per bucket
+
+    // layout of a data word: value (32 bits) | depth (8 bits) | bound (2 bits) | move + 1 (14 bits) | generation (8 bits)
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int GENERATION_SHIFT = 56;
+    private static final long MOVE_MASK = (1L << 14) - 1;
+
+    private long[] keys;   // zobrist key of each slot, xored with the slot's data
+    private long[] data;   // packed entry of each slot, 0 when the slot is empty
+    private int mask;      // number of buckets - 1
+    private int generation; // bumped once per searched move, used to age out old entries
+
+    // counters for sizing the table
+    private long probes;
+    private long hits;
+    private long collisions; // probes that found their bucket filled by other positions
+    private long stores;
+    private long overwrites; // stores that pushed out a different position
+
+    // creates a table that uses about the given number of megabytes
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1)
+            throw new IllegalArgumentException("table needs at least one megabyte");
+
+        // rounds the bucket count down to a power of two so a bucket index is a mask of the key
+        long buckets = Long.highestOneBit(((long) megabytes << 20) / (ENTRY_BYTES * BUCKET));
+        if (buckets * BUCKET > Integer.MAX_VALUE - 8)
+            buckets = 1L << 29;
+
+        keys = new long[(int) buckets * BUCKET];
+        data = new long[(int) buckets * BUCKET];
+        mask = (int) buckets - 1;
+    }
+
+    // looks up a position. returns the packed entry or MISS
+    public long probe(long key) {
+        probes++;
+        int index = index(key);
+
+        for (int slot = index; slot < index + BUCKET; slot++) {
+            long entry = data[slot];
+            if (entry != 0 && (keys[slot] ^ entry) == key) {
+                hits++;
+                return entry;
+            }
+        }
+
+        if (data[index] != 0 || data[index + 1] != 0)
+            collisions++;
+        return MISS;
+    }
+
+    // stores the result of searching a position. move is the slot index of the best move or -1 for none
+    public void store(long key, int depth, int value, int bound, int move) {
+        int index = index(key);
+        depth = Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, depth));
+        long entry = (value & 0xFFFFFFFFL)
+                   | (long) (depth & 0xFF) << DEPTH_SHIFT
+                   | (long) bound << BOUND_SHIFT
+                   | (long) (move + 1) << MOVE_SHIFT
+                   | (long) (generation & 0xFF) << GENERATION_SHIFT;
+
+        // the deep slot is taken when it is empty, holds this position, is left over from an earlier move,
+        // or holds a result that is no deeper than this one. otherwise the always-replace slot is used
+        int slot = index + 1;
+        long deep = data[index];
+        if (deep == 0 || (keys[index] ^ deep) == key || generation(deep) != (generation & 0xFF) || depth(deep) <= depth)
+            slot = index;
+
+        stores++;
+        long old = data[slot];
+        if (old != 0 && (keys[slot] ^ old) != key)
+            overwrites++;
+
+        keys[slot] = key ^ entry;
+        data[slot] = entry;
+    }
+
+    // marks the start of a new search so entries from earlier searches are replaced first
+    public void nextGeneration() {
+        generation++;
+    }
+
+    // empties the table and resets the counters
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        generation = 0;
+        probes = hits = collisions = stores = overwrites = 0;
+    }
+
+    // decoders for a packed entry
+    public static int value(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (byte) (entry >>> DEPTH_SHIFT);
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 3;
+    }
+
+    public static int move(long entry) {
+        return (int) ((entry >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    // first slot of the bucket a key maps to
+    private int index(long key) {
+        return (int) (key & mask) * BUCKET;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getCollisions() {
+        return collisions;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+    public long getOverwrites() {
+        return overwrites;
+    }
+
+    @Override
+    public String toString() {
+        double hitRate = probes == 0 ? 0 : 100.0 * hits / probes;
+        return String.format("table: %d slots, %d probes, %d hits (%.1f%%), %d collisions, %d stores, %d overwrites",
+                             capacity(), probes, hits, hitRate, collisions, stores, overwrites);
+    }
+}
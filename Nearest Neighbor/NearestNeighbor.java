@@ -1,63 +1,145 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class NearestNeighbor {
-    // Record class (inner class)
-    private class Record {
-        private double[] attributes; // attributes of the record (credit score, income, age, sex, status)  
-        private int className;       // class of the record
-
-        private Record(double[] attributes, int className) {
-            this.attributes = attributes; 
-            this.className = className;  
-        }
-    }
+    public static final int BRUTE_FORCE = 0;   // classify compares each query with every training record
+    private static final double TIE_SLACK = 1e-15; // squared distances this much over the k-th can still tie with it
+    private static final int TIED = 64;            // starting size of the buffers for records tied with the k-th
+    private static final int BATCH = 1024;         // test records a worker classifies at a time in parallel mode
+    private static final int BATCHES_PER_THREAD = 4; // batches read ahead of the output for each worker
+    private static final int BLOCK = 512;          // records a scan computes the distances of at a time
+    private static final int VALIDATION_BATCH = 256; // records a worker validates at a time
 
     private int numberRecords;         // number of training records   
     private int numberAttributes;      // number of attributes   
     private int numberClasses;         // number of classes
     private int numberNeighbors;       // number of nearest neighbors
-    private ArrayList<Record> records; // list of training records
+    private double[] columns;          // attributes of the training records, attribute a of record i at
+                                       // a * numberRecords + i (credit score, income, age, sex, status)
+    private int[] classNames;          // class of each training record
+    private int indexKind = BRUTE_FORCE;  // BRUTE_FORCE, SpatialIndex.KD_TREE or SpatialIndex.BALL_TREE
+    private SpatialIndex index;        // index over the training records, null for brute force
+    private ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new); // buffers of each classifying thread
+
+    // Scratch class (inner class). buffers a thread reuses for every query, so classifying allocates nothing
+    private class Scratch {
+        private double[] heapDistances = new double[numberNeighbors]; // max heap of the k smallest squared distances
+        private int[] heapIds = new int[numberNeighbors];             // record of each heap entry
+        private double[] tiedDistances = new double[TIED]; // records at or just past the k-th nearest so far
+        private int[] tiedIds = new int[TIED];
+        private int[] id = new int[TIED];                  // neighbors handed to the selection, in record order
+        private double[] distance = new double[TIED];
+        private double[] frequency = new double[numberClasses];
+        private SpatialIndex.Candidates candidates = new SpatialIndex.Candidates();
+        private double[] block = new double[BLOCK];        // distances to a block of records
+        private double[] record = new double[numberAttributes]; // attributes of the record being validated
+    }
+
+    // RecordSource interface (inner interface). hands the records to classify to classifyStream a batch at a time
+    public interface RecordSource {
+        // puts the attributes of the next records at the start of a batch and returns how many, 0 at the end
+        int read(double[][] batch) throws IOException;
+    }
+
+    // ClassSink interface (inner interface). takes the classes classifyStream determines, in the order of the records
+    public interface ClassSink {
+        void write(int[] classNames) throws IOException;
+    }
 
     public NearestNeighbor(int k) {
         numberNeighbors = k;
     }
 
+    // a classifier with k neighbors over the training data and index of another one, shared, not copied
+    private NearestNeighbor(NearestNeighbor classifier, int k) {
+        numberNeighbors = k;
+        numberRecords = classifier.numberRecords;
+        numberAttributes = classifier.numberAttributes;
+        numberClasses = classifier.numberClasses;
+        columns = classifier.columns;
+        classNames = classifier.classNames;
+        indexKind = classifier.indexKind;
+        index = classifier.index;
+    }
+
+    // chooses how training data loaded from now on is searched: BRUTE_FORCE, SpatialIndex.KD_TREE or
+    // SpatialIndex.BALL_TREE. the indexes find the same neighbors as brute force, so classes do not change
+    public void setIndex(int indexKind) {
+        if (indexKind != BRUTE_FORCE && indexKind != SpatialIndex.KD_TREE && indexKind != SpatialIndex.BALL_TREE)
+            throw new IllegalArgumentException("unknown index kind " + indexKind);
+        this.indexKind = indexKind;
+    }
+
     // loads data from training file
     public void loadTrainingData(String trainingFile) throws IOException {
-        Scanner inFile = new Scanner(new File(trainingFile));
+        TokenReader inFile = new TokenReader(trainingFile);
 
         // reads number of records, attributes, classes
-        numberRecords = inFile.nextInt();
+        int records = inFile.nextInt();
+        if (records < numberNeighbors) {
+            inFile.close();
+            throw new IllegalArgumentException(tooFewRecords(records) + " in " + trainingFile);
+        }
+        numberRecords = records;
         numberAttributes = inFile.nextInt();
         numberClasses = inFile.nextInt();
 
-        // creates list of records
-        records = new ArrayList<Record>();        
+        // creates the columns of attributes and the classes
+        columns = new double[Math.multiplyExact(numberRecords, numberAttributes)];
+        classNames = new int[numberRecords];
 
         // for each record
         for (int i = 0; i < numberRecords; i++) {
-            // create attribute array
-            double[] attributeArray = new double[numberAttributes]; 
-                                    
-            // read attribute values
+            // read attribute values into their columns
             for (int j = 0; j < numberAttributes; j++)   
-                attributeArray[j] = inFile.nextDouble();  
+                columns[j * numberRecords + i] = inFile.nextDouble();  
 
             // read class name
-            int className = inFile.nextInt();
-
-            // create record and add to list
-            Record record = new Record(attributeArray, className);
-            records.add(record);
+            classNames[i] = inFile.nextInt();
         }
 
         inFile.close();
+        buildIndex();
+    }
+
+    // loads training data that is already in memory: the attributes and class of each record
+    public void setTrainingData(double[][] attributes, int[] classNames, int numberClasses) {
+        if (attributes.length < numberNeighbors)
+            throw new IllegalArgumentException(tooFewRecords(attributes.length));
+
+        numberRecords = attributes.length;
+        numberAttributes = numberRecords == 0 ? 0 : attributes[0].length;
+        this.numberClasses = numberClasses;
+
+        columns = new double[Math.multiplyExact(numberRecords, numberAttributes)];
+        for (int i = 0; i < numberRecords; i++)
+            for (int j = 0; j < numberAttributes; j++)
+                columns[j * numberRecords + i] = attributes[i][j];
+        this.classNames = Arrays.copyOf(classNames, numberRecords);
+
+        buildIndex();
+    }
+
+    // the error for training data with fewer records than neighbors. the neighbors could not all be found, and
+    // majority would count the votes of records left in the buffers by earlier queries
+    private String tooFewRecords(int records) {
+        return numberNeighbors + " neighbors need at least as many training records, not " + records;
+    }
+
+    // builds the spatial index over the training records, if one was chosen, and drops buffers sized for earlier data
+    private void buildIndex() {
+        scratch = ThreadLocal.withInitial(Scratch::new);
+        index = null;
+        if (indexKind == BRUTE_FORCE)
+            return;
+
+        index = new SpatialIndex(columns, numberRecords, numberAttributes, indexKind);
     }
 
     // reads records from test file, determines their classes, and writes classes to classified file
     public void classifyData(String testFile, String classifiedFile) throws IOException {
-        Scanner inFile = new Scanner(new File(testFile));
+        TokenReader inFile = new TokenReader(testFile);
         PrintWriter outFile = new PrintWriter(new FileWriter(classifiedFile));
 
         // reads number of records
@@ -66,11 +148,11 @@ public class NearestNeighbor {
         // writes number of records
         outFile.println(numberRecords);
 
+        // attribute array, reused for every record
+        double[] attributeArray = new double[numberAttributes];
+
         // for each record
         for (int i = 0; i < numberRecords; i++) {
-            // create attribute array
-            double[] attributeArray = new double[numberAttributes];
-
             // read attribute values
             for (int j = 0; j < numberAttributes; j++)
                 attributeArray[j] = inFile.nextDouble();
@@ -86,33 +168,274 @@ public class NearestNeighbor {
         outFile.close();
     }    
 
+    // classifies test data on the given number of threads, with classifyStream, so the output is the same as with
+    // one thread and memory stays the same however large the test file is
+    public void classifyData(String testFile, String classifiedFile, int threads) throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, not " + threads);
+        if (threads == 1) {
+            classifyData(testFile, classifiedFile);
+            return;
+        }
+
+        TokenReader inFile = new TokenReader(testFile);
+        PrintWriter outFile = new PrintWriter(new FileWriter(classifiedFile));
+        try {
+            // reads and writes number of records
+            int numberRecords = inFile.nextInt();
+            outFile.println(numberRecords);
+
+            RecordSource source = new RecordSource() {
+                private int remaining = numberRecords;
+
+                @Override
+                public int read(double[][] batch) throws IOException {
+                    int count = Math.min(batch.length, remaining);
+                    for (int i = 0; i < count; i++)
+                        for (int j = 0; j < numberAttributes; j++)
+                            batch[i][j] = inFile.nextDouble();
+                    remaining -= count;
+                    return count;
+                }
+            };
+            classifyStream(source, classNames -> {
+                for (int className : classNames)
+                    outFile.println(className);
+            }, threads);
+        } finally {
+            inFile.close();
+            outFile.close();
+        }
+    }
+
+    // classifies every record of a source and hands their classes to a sink, a batch at a time, on the given number
+    // of threads. with more than one, batches are classified by a pool of workers and each batch's classes go to the
+    // sink once the batches before it have, so the sink gets them in the same order as with one thread. at most
+    // BATCHES_PER_THREAD batches per thread are read ahead of the sink, so memory stays the same however many records
+    // there are, and the arrays of written batches are read into again, so no attributes are allocated per record
+    public void classifyStream(RecordSource source, ClassSink sink, int threads) throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, not " + threads);
+        if (threads == 1) {
+            double[][] batch = new double[BATCH][numberAttributes];
+            for (int count = source.read(batch); count > 0; count = source.read(batch))
+                sink.write(classifyBatch(batch, count));
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayDeque<Future<int[]>> pending = new ArrayDeque<Future<int[]>>(); // batches not written yet, in input order
+        ArrayDeque<double[][]> reading = new ArrayDeque<double[][]>(); // their attributes, in the same order
+        ArrayDeque<double[][]> free = new ArrayDeque<double[][]>();    // attributes of written batches, to read into
+        try {
+            while (true) {
+                double[][] batch = free.isEmpty() ? new double[BATCH][numberAttributes] : free.pop();
+                int count = source.read(batch);
+                if (count == 0)
+                    break;
+
+                pending.add(pool.submit(() -> classifyBatch(batch, count)));
+                reading.add(batch);
+                if (pending.size() >= BATCHES_PER_THREAD * threads) {
+                    sink.write(classified(pending.remove()));
+                    free.push(reading.remove());
+                }
+            }
+            while (!pending.isEmpty())
+                sink.write(classified(pending.remove()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // determines the class of each of the first count sets of attributes in a batch
+    private int[] classifyBatch(double[][] batch, int count) {
+        int[] classNames = new int[count];
+        for (int i = 0; i < count; i++)
+            classNames[i] = classify(batch[i]);
+        return classNames;
+    }
+
+    // waits for a batch to be classified and returns its classes
+    private int[] classified(Future<int[]> batch) throws IOException {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while classifying");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IOException("classifying failed", e.getCause());
+        }
+    }
+
     // determines the class of a set of attributes
-    private int classify(double[] attributes) {   
-        double[] distance = new double[numberRecords];
-        int[] id = new int[numberRecords];
+    public int classify(double[] attributes) {   
+        Scratch buffers = scratch.get();
+        nearestNeighbors(attributes, -1, buffers);
+        return majority(buffers.id, buffers.frequency);
+    }
 
-        //find distances between attributes and all records
-        for (int i = 0; i < numberRecords; i++) {
-            distance[i] = distance(attributes, records.get(i).attributes);
-            id[i] = i;
+    // finds the nearest neighbors of a set of attributes among the training records but exclude (-1 for none), with the
+    // index when there is one. they are left at the start of the id buffer of the scratch buffers, nearest first
+    private void nearestNeighbors(double[] attributes, int exclude, Scratch buffers) {
+        if (index != null)
+            indexNeighbors(attributes, exclude, buffers);
+        else
+            scanNeighbors(attributes, exclude, buffers);
+    }
+
+    // finds the nearest neighbors by comparing a set of attributes with every training record but exclude
+    private void scanNeighbors(double[] attributes, int exclude, Scratch buffers) {
+        // keeps the k smallest squared distances in a max heap, which only needs order, not the square roots. records
+        // at or just past the k-th nearest so far are set aside, since they may end up tied with the k-th nearest
+        double[] heap = buffers.heapDistances;
+        int[] heapIds = buffers.heapIds;
+        double[] block = buffers.block;
+        int size = 0;
+        int tied = 0;
+        for (int first = 0; first < numberRecords; first += BLOCK) {
+            int count = Math.min(BLOCK, numberRecords - first);
+            blockDistances(attributes, first, count, block);
+
+            for (int j = 0; j < count; j++) {
+                int i = first + j;
+                double distance = block[j];
+                if (i == exclude)
+                    continue;
+
+                if (size < numberNeighbors) {
+                    push(heap, heapIds, size++, distance, i);
+                }
+                else if (distance < heap[0]) {
+                    double evicted = heap[0];
+                    int evictedId = heapIds[0];
+                    replaceTop(heap, heapIds, size, distance, i);
+                    if (evicted <= heap[0] * (1 + TIE_SLACK))
+                        tied = setAside(buffers, tied, evictedId, evicted);
+                }
+                else if (distance <= heap[0] * (1 + TIE_SLACK)) {
+                    tied = setAside(buffers, tied, i, distance);
+                }
+            }
+        }
+
+        // the neighbors are the heap and whatever set aside record rounds to the same distance as the k-th nearest
+        double limit = Math.sqrt(heap[0]);
+        int count = 0;
+        growNeighbors(buffers, size + tied);
+        for (int i = 0; i < size; i++)
+            buffers.id[count++] = heapIds[i];
+        for (int i = 0; i < tied; i++)
+            if (Math.sqrt(buffers.tiedDistances[i]) <= limit)
+                buffers.id[count++] = buffers.tiedIds[i];
+
+        select(attributes, buffers, count);
+    }
+
+    // adds a record to the ones set aside. when they fill their buffers, the ones now too far to tie with the k-th
+    // nearest are dropped, and the buffers grow if that does not free half of them. returns how many are set aside
+    private int setAside(Scratch buffers, int tied, int id, double distance) {
+        if (tied == buffers.tiedIds.length) {
+            double limit = buffers.heapDistances[0] * (1 + TIE_SLACK);
+            int kept = 0;
+            for (int i = 0; i < tied; i++) {
+                if (buffers.tiedDistances[i] <= limit) {
+                    buffers.tiedIds[kept] = buffers.tiedIds[i];
+                    buffers.tiedDistances[kept++] = buffers.tiedDistances[i];
+                }
+            }
+            tied = kept;
+            if (tied > buffers.tiedIds.length / 2) {
+                buffers.tiedIds = Arrays.copyOf(buffers.tiedIds, 2 * buffers.tiedIds.length);
+                buffers.tiedDistances = Arrays.copyOf(buffers.tiedDistances, 2 * buffers.tiedDistances.length);
+            }
         }
 
-        //find nearest neighbors
-        nearestNeighbor(distance, id);
+        buffers.tiedIds[tied] = id;
+        buffers.tiedDistances[tied] = distance;
+        return tied + 1;
+    }
+
+    // finds the nearest neighbors with the spatial index, leaving out training record exclude. the index finds every
+    // record as near as the k-th nearest, and the same selection as the scan follows
+    private void indexNeighbors(double[] attributes, int exclude, Scratch buffers) {
+        double kth = index.kthDistance(attributes, numberNeighbors, exclude, buffers.heapDistances);
+        double limit = Math.sqrt(kth);
+        SpatialIndex.Candidates candidates = buffers.candidates;
+        index.within(attributes, kth * (1 + TIE_SLACK), exclude, candidates);
+
+        // keeps the records whose distance, rounded as classify rounds it, is no more than the k-th
+        int count = 0;
+        growNeighbors(buffers, candidates.size);
+        for (int i = 0; i < candidates.size; i++)
+            if (Math.sqrt(candidates.distances[i]) <= limit)
+                buffers.id[count++] = candidates.ids[i];
+
+        select(attributes, buffers, count);
+    }
 
-        //find majority class of nearest neighbors
-        int className = majority(id);
+    // moves the k nearest of the count records in the id buffer, which hold every record as near as the k-th nearest,
+    // to its start. the records are put in record order and the original selection runs on just them, so records
+    // tied at the k-th distance are chosen exactly as a selection over every record would choose them: the records
+    // farther away never change how the nearer ones are ordered
+    private void select(double[] attributes, Scratch buffers, int count) {
+        int[] id = buffers.id;
+        double[] distance = buffers.distance;
+        Arrays.sort(id, 0, count);
+        for (int i = 0; i < count; i++)
+            distance[i] = Math.sqrt(squaredDistance(attributes, id[i]));
+
+        nearestNeighbor(distance, id, count);
+    }
+
+    // makes sure the neighbor buffers hold at least count records
+    private void growNeighbors(Scratch buffers, int count) {
+        if (buffers.id.length < count) {
+            buffers.id = new int[Math.max(count, 2 * buffers.id.length)];
+            buffers.distance = new double[buffers.id.length];
+        }
+    }
 
-        //return class
-        return className;
+    // adds a squared distance and its record to a max heap holding size entries
+    private static void push(double[] heap, int[] ids, int size, double distance, int id) {
+        int child = size;
+        while (child > 0 && heap[(child - 1) / 2] < distance) {
+            heap[child] = heap[(child - 1) / 2];
+            ids[child] = ids[(child - 1) / 2];
+            child = (child - 1) / 2;
+        }
+        heap[child] = distance;
+        ids[child] = id;
     }
 
+    // replaces the largest entry of a full max heap
+    private static void replaceTop(double[] heap, int[] ids, int size, double distance, int id) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] > heap[child])
+                child++;
+            if (heap[child] <= distance)
+                break;
+            heap[parent] = heap[child];
+            ids[parent] = ids[child];
+            parent = child;
+        }
+        heap[parent] = distance;
+        ids[parent] = id;
+    }
 
-    // finds the nearest neighbors
-    private void nearestNeighbor(double[] distance, int[] id) {
+    // finds the nearest neighbors among the first count records
+    private void nearestNeighbor(double[] distance, int[] id, int count) {
         // sort distances and choose nearest neighbors
         for (int i = 0; i < numberNeighbors; i++)
-            for (int j = i; j < numberRecords; j++)
+            for (int j = i; j < count; j++)
                 if (distance[i] > distance[j]) {
                     double tempDistance = distance[i];
                     distance[i] = distance[j];
@@ -124,9 +447,8 @@ public class NearestNeighbor {
                 }
     }
 
-    // finds the majority class of nearest neighbors
-    private int majority(int[] id) {
-        double[] frequency = new double[numberClasses];
+    // finds the majority class of nearest neighbors, counting in the given frequency buffer
+    private int majority(int[] id, double[] frequency) {
 
         // class frequencies are zero initially
         for (int i = 0; i < numberClasses; i++)
@@ -134,7 +456,7 @@ public class NearestNeighbor {
 
         // each neighbor contributes 1 to its class
         for (int i = 0; i < numberNeighbors; i++)
-            frequency[records.get(id[i]).className - 1] += 1;
+            frequency[classNames[id[i]] - 1] += 1;
 
         //f ind majority class
         int maxIndex = 0;                         
@@ -145,45 +467,140 @@ public class NearestNeighbor {
         return maxIndex + 1;
     }
 
-    // finds Euclidean distance between two points
-    private double distance(double[] u, double[] v) {
+    // finds the squared Euclidean distance between a point and a training record, which orders records the same way
+    // as the Euclidean distance
+    private double squaredDistance(double[] u, int record) {
         double distance = 0;         
 
-        for (int i = 0; i < u.length; i++)
-            distance = distance + (u[i] - v[i])*(u[i] - v[i]);
+        for (int i = 0; i < numberAttributes; i++)
+            distance = distance + (u[i] - columns[i * numberRecords + record])*(u[i] - columns[i * numberRecords + record]);
 
-        distance = Math.sqrt(distance); 
- 
         return distance;               
     }
 
-    // validates classifier using training file and leave one out method
+    // finds the squared distances from a point to count training records from first on. each attribute is added for
+    // the whole block at once, a loop over consecutive values the JIT turns into vector instructions, while each
+    // record's distance is still summed attribute by attribute, in the same order as squaredDistance
+    private void blockDistances(double[] u, int first, int count, double[] distances) {
+        Arrays.fill(distances, 0, count, 0);
+
+        for (int i = 0; i < numberAttributes; i++) {
+            double value = u[i];
+            int column = i * numberRecords + first;
+            for (int j = 0; j < count; j++)
+                distances[j] = distances[j] + (value - columns[column + j])*(value - columns[column + j]);
+        }
+    }
+
+    // validates classifier using training file and leave one out method, on every core
     public void validate() {
-         // gets number of records
-         int numberRecords = records.size();
+        validate(Runtime.getRuntime().availableProcessors());
+    }
 
-         // initially zero errors
-         int numberErrors = 0;
+    // validates classifier using training file and leave one out method on the given number of threads, and returns
+    // the error rate in percent. each record is left out of the search in place of being taken out of the training
+    // data, with the index when there is one, and batches of records are validated by a pool of workers with their
+    // own buffers, so the error rate is the same on any number of threads
+    public double validate(int threads) {
+        int[] numberErrors = countErrors(threads);
+
+        //find and print error rate
+        double errorRate = 100.0*numberErrors[numberNeighbors]/numberRecords;
+        System.out.println("validation error: " + errorRate + "%");
+        return errorRate;
+    }
 
-         // removing each record from the list and adding them back in after we have validated them
-         this.numberRecords--;
-         for (int i = 0; i < numberRecords; i++) {
-            Record currentRec = records.remove(i);
-            double[] attributeArray = currentRec.attributes;
+    // finds the leave one out error rate in percent for every number of neighbors from 1 to largest, on the given
+    // number of threads. element k is the error rate validate gives with k neighbors, element 0 is not used. the
+    // largest number of neighbors are found once for each record, and every smaller k is voted on from them
+    public double[] sweep(int largest, int threads) {
+        if (largest < 1)
+            throw new IllegalArgumentException("largest k must be at least 1, not " + largest);
+
+        int[] numberErrors = new NearestNeighbor(this, largest).countErrors(threads);
+        double[] errorRates = new double[largest + 1];
+        for (int k = 1; k <= largest; k++)
+            errorRates[k] = 100.0*numberErrors[k]/numberRecords;
+        return errorRates;
+    }
 
-            int predictedClass = classify(attributeArray);
+    // the number of neighbors with the lowest error rate of a sweep, the smallest of them on a tie
+    public static int bestK(double[] errorRates) {
+        int best = 1;
+        for (int k = 2; k < errorRates.length; k++)
+            if (errorRates[k] < errorRates[best])
+                best = k;
+        return best;
+    }
 
-            //errror if predicted and actual classes do not match
-            if (predictedClass != currentRec.className)               
-                numberErrors += 1;
+    // counts the records misclassified when left out, for every k up to the number of neighbors, with batches of
+    // records counted on the given number of threads
+    private int[] countErrors(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, not " + threads);
+        if (numberRecords - 1 < numberNeighbors)
+            throw new IllegalStateException("leaving one out, " + tooFewRecords(numberRecords - 1) + " left");
+        if (threads == 1)
+            return countErrors(0, numberRecords);
+
+        int[] numberErrors = new int[numberNeighbors + 1];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Future<int[]>> batches = new ArrayList<Future<int[]>>();
+        try {
+            for (int first = 0; first < numberRecords; first += VALIDATION_BATCH) {
+                int from = first;
+                int to = Math.min(first + VALIDATION_BATCH, numberRecords);
+                batches.add(pool.submit(() -> countErrors(from, to)));
+            }
+            for (Future<int[]> batch : batches) {
+                int[] batchErrors = batch.get();
+                for (int k = 1; k <= numberNeighbors; k++)
+                    numberErrors[k] += batchErrors[k];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while validating");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+        return numberErrors;
+    }
 
-            // putting record back into the same spot it was removed from
-            records.add(i, currentRec);
-         }
-         this.numberRecords++;
+    // counts the records from first up to last that are misclassified when left out, for every k up to the number of
+    // neighbors. the first k neighbors the selection picks are the ones it picks for k alone, since a selection pass
+    // never moves what earlier passes placed, so adding one neighbor's vote at a time gives the majority of each k
+    private int[] countErrors(int first, int last) {
+        Scratch buffers = scratch.get();
+        double[] frequency = buffers.frequency;
+        int[] numberErrors = new int[numberNeighbors + 1];
+
+        for (int i = first; i < last; i++) {
+            // copies the record's attributes out of their columns
+            double[] attributeArray = buffers.record;
+            for (int j = 0; j < numberAttributes; j++)
+                attributeArray[j] = columns[j * numberRecords + i];
+
+            nearestNeighbors(attributeArray, i, buffers);
+
+            // the majority class stays the first class with the most votes, as in majority
+            Arrays.fill(frequency, 0);
+            int maxIndex = 0;
+            for (int k = 1; k <= numberNeighbors; k++) {
+                int vote = classNames[buffers.id[k - 1]] - 1;
+                frequency[vote] += 1;
+                if (frequency[vote] > frequency[maxIndex] || frequency[vote] == frequency[maxIndex] && vote < maxIndex)
+                    maxIndex = vote;
+
+                //errror if predicted and actual classes do not match
+                if (maxIndex + 1 != classNames[i])
+                    numberErrors[k] += 1;
+            }
+        }
 
-         //find and print error rate
-         double errorRate = 100.0*numberErrors/numberRecords;
-         System.out.println("validation error: " + errorRate + "%");
+        return numberErrors;
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,28 @@
  * DESC: uses the nearest neighbor algorithm to determine the likelihood of someone defaulting on a loan
  * PARAMS: credit score, income, age, sex, marriage status
  * CLASSES: low, medium, high, undetermined
+ * BENCHMARK: run with the arguments "index [records...]" to time queries with brute force, the KD tree and the ball
+ *            tree on random records like the loan data (10000, 1000000 and 10000000 by default) and check all three
+ *            give the same classes. 10 million records need about 4 GB of heap (-Xmx4g)
+ *            "parallel [test records] [threads]" classifies a random test file with classifyData on 1, 2, 4, ... up to
+ *            the given threads (the cores by default), prints records per second and checks every output matches
+ *            the one written with one thread
+ *            "load [megabytes]" writes a random training file of about that size (1024 by default) and times reading
+ *            it with Scanner, as loading used to, against TokenReader and against loadTrainingData. a 1 GB file
+ *            loads in about 3 GB of heap (-Xmx3g). it also checks files whose last value has no newline after it
+ *            "validate [records] [threads]" times leave one out validation of random records (20000 by default) by
+ *            brute force on one thread, by brute force on the given threads (the cores by default) and with a KD tree
+ *            on them, and checks all three find the same error rate
+ *            "sweep [largest k] [records]" finds the leave one out error rate of random records (5000 by default) for
+ *            every k from 1 to the largest (20 by default) in one sweep, prints the curve and the best k, and checks
+ *            each rate against a validation with that k, timing the sweep against one validation
+ *            "pipeline [training records] [test records]" writes random raw files and times classifying them the old
+ *            way, through the converted files, against the in memory pipeline, and checks both outputs are the same.
+ *            classifying the test records already in memory is timed too, so the time spent on files shows
+ *            the benchmarks write their files to the temporary directory and they are deleted when the tester exits
+ * PIPELINE: raw records are normalized and encoded as they are read, straight into the classifier for training data,
+ *           and test records go from the raw file through encoding, classification and decoding to the output in
+ *           batches, with no intermediate files
 */
 
 import java.io.*;
@@ -17,16 +39,85 @@ public class NearestNeighborTester {
     private static final int AGE_START    = 30;
     private static final int AGE_END      = 80;
 
+    // index benchmark
+    private static final int[] BENCHMARK_RECORDS = {10000, 1000000, 10000000};
+    private static final int BENCHMARK_QUERIES = 2000;
+    private static final long BRUTE_FORCE_WORK = 500000000L; // record comparisons brute force gets for each size
+    private static final long SEED = 1;
+
+    // parallel benchmark
+    private static final int PARALLEL_TRAINING = 1000000;
+    private static final int PARALLEL_TEST = 200000;
+    private static final String PARALLEL_TEST_FILE = "parallelTest";
+    private static final String PARALLEL_OUTPUT = "parallelClassified";
+
+    // load benchmark
+    private static final int LOAD_MEGABYTES = 1024;
+    private static final int LOAD_SAMPLE = 10000; // records written to estimate the size of one
+    private static final String LOAD_FILE = "loadTraining";
+
+    // validation benchmark
+    private static final int VALIDATION_RECORDS = 20000;
+
+    // sweep benchmark
+    private static final int SWEEP_LARGEST = 20;
+    private static final int SWEEP_RECORDS = 5000;
+
+    // pipeline benchmark
+    private static final int PIPELINE_TRAINING = 100000;
+    private static final int PIPELINE_TEST = 1000000;
+    private static final String RAW_TRAINING_FILE = "rawTraining";
+    private static final String RAW_TEST_FILE = "rawTest";
+    private static final String FILES_OUTPUT = "filesClassified";
+    private static final String PIPELINE_OUTPUT = "pipelineClassified";
+    private static final String TRAINING_FILE = "trainingFile";   // converted files of the old flow
+    private static final String TEST_FILE = "testFile";
+    private static final String CLASSIFIED = "classifiedData";
+
     // string params 
-    private static final String TRAINING_FILE = "trainingFile.txt";
-    private static final String TEST_FILE = "testFile.txt";
-    private static final String CLASSIFIED = "classifiedData.txt";
     private static String origTrainingFile;
     private static String origTestFile;
     private static String classifiedOutput;
 
     // main method
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("index")) {
+            int[] sizes = BENCHMARK_RECORDS;
+            if (args.length > 1) {
+                sizes = new int[args.length - 1];
+                for (int i = 1; i < args.length; i++)
+                    sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+            indexBenchmark(sizes);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("parallel")) {
+            int testRecords = args.length > 1 ? Integer.parseInt(args[1]) : PARALLEL_TEST;
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            parallelBenchmark(testRecords, threads);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("load")) {
+            loadBenchmark(args.length > 1 ? Integer.parseInt(args[1]) : LOAD_MEGABYTES);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("validate")) {
+            int records = args.length > 1 ? Integer.parseInt(args[1]) : VALIDATION_RECORDS;
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            validationBenchmark(records, threads);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sweep")) {
+            int largest = args.length > 1 ? Integer.parseInt(args[1]) : SWEEP_LARGEST;
+            sweepBenchmark(largest, args.length > 2 ? Integer.parseInt(args[2]) : SWEEP_RECORDS);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("pipeline")) {
+            int trainingRecords = args.length > 1 ? Integer.parseInt(args[1]) : PIPELINE_TRAINING;
+            pipelineBenchmark(trainingRecords, args.length > 2 ? Integer.parseInt(args[2]) : PIPELINE_TEST);
+            return;
+        }
+
         // getting user input for input files
         Scanner scanner = new Scanner(System.in);
         System.out.println("Enter path/name of training data:");
@@ -37,28 +128,79 @@ public class NearestNeighborTester {
         classifiedOutput = scanner.nextLine();
         scanner.close();
 
-        // preprocessing files - normalzing and converting words to numbers
-        convertTrainingFile(origTrainingFile, TRAINING_FILE);
-        convertTestFile(origTestFile, TEST_FILE); 
-
-        // creating new classifier, loading data, and setting params
+        // creating new classifier and loading the training data, normalized and converted to numbers as it is read
         NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
-        classifier.loadTrainingData(TRAINING_FILE);
+        loadRawTrainingData(classifier, origTrainingFile);
 
         // running validation function
         classifier.validate();
 
-        // classifying test data 
-        classifier.classifyData(TEST_FILE, CLASSIFIED);
+        // classifying test data and writing the classes as words
+        classifyRawData(classifier, origTestFile, classifiedOutput, Runtime.getRuntime().availableProcessors());
+    }
+
+    // reads an original training file, normalizing and converting each record as convertTrainingFile does, and gives
+    // the records to the classifier
+    private static void loadRawTrainingData(NearestNeighbor classifier, String inputFile) throws IOException {
+        try (TokenReader inFile = new TokenReader(inputFile)) {
+            // gets number of records, attributes, and classes
+            int numberRecords = inFile.nextInt();
+            int numberAttributes = inFile.nextInt();
+            int numberClasses = inFile.nextInt();
+
+            double[][] attributes = new double[numberRecords][numberAttributes];
+            int[] classNames = new int[numberRecords];
+            for (int i = 0; i < numberRecords; i++) {
+                readApplicant(inFile, attributes[i]);
+                classNames[i] = convertClassToNumber(inFile.next());
+            }
+            classifier.setTrainingData(attributes, classNames, numberClasses);
+        }
+    }
+
+    // classifies an original test file into a file of class names, in one pass: batches of records are normalized
+    // and converted as they are read, classified on the given number of threads, and written as words
+    private static void classifyRawData(NearestNeighbor classifier, String inputFile, String outputFile, int threads)
+            throws IOException {
+        try (TokenReader inFile = new TokenReader(inputFile);
+             PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(outputFile), 1 << 16))) {
+            // reading number of records and writing to output
+            int numberRecords = inFile.nextInt();
+            outFile.println(numberRecords);
+
+            NearestNeighbor.RecordSource source = new NearestNeighbor.RecordSource() {
+                private int remaining = numberRecords;
+
+                @Override
+                public int read(double[][] batch) throws IOException {
+                    int count = Math.min(batch.length, remaining);
+                    for (int i = 0; i < count; i++)
+                        readApplicant(inFile, batch[i]);
+                    remaining -= count;
+                    return count;
+                }
+            };
+            classifier.classifyStream(source, classNames -> {
+                for (int className : classNames)
+                    outFile.println(convertNumberToClass(className));
+            }, threads);
+        }
+    }
 
-        // converting from class numbers to corresponding words
-        convertClassFile(CLASSIFIED, classifiedOutput);
+    // reads the attributes of one applicant of an original file into an array, normalized and converted to numbers
+    // to the same values the converted files hold
+    private static void readApplicant(TokenReader inFile, double[] attributes) throws IOException {
+        attributes[0] = normalize(inFile.nextDouble(), CREDIT_START, CREDIT_END);
+        attributes[1] = normalize(inFile.nextDouble(), INCOME_START, INCOME_END);
+        attributes[2] = normalize(inFile.nextDouble(), AGE_START, AGE_END);
+        attributes[3] = inFile.next().equals("male") ? 0 : 1;
+        attributes[4] = convertMarried(inFile.next());
     }
 
     // converts and normalizes original training file and stores it into the file we use in the algo
     private static void convertTrainingFile(String inputFile, String outputFile) throws IOException {
         // setting up input and output files
-        Scanner inFile = new Scanner(new File(inputFile));
+        TokenReader inFile = new TokenReader(inputFile);
         PrintWriter outFile = new PrintWriter(new FileWriter(outputFile));
 
         // gets number of records, attributes, and classes
@@ -109,7 +251,7 @@ public class NearestNeighborTester {
     // converts test file to numerical format
     private static void convertTestFile(String inputFile, String outputFile) throws IOException {
         // setting up input and output files
-        Scanner inFile = new Scanner(new File(inputFile));
+        TokenReader inFile = new TokenReader(inputFile);
         PrintWriter outFile = new PrintWriter(new FileWriter(outputFile));
 
         // reading number of records and writing to output
@@ -151,7 +293,7 @@ public class NearestNeighborTester {
     // converts classified file to text format
     private static void convertClassFile(String inputFile, String outputFile) throws IOException {
         // input and output files
-        Scanner inFile = new Scanner(new File(inputFile));
+        TokenReader inFile = new TokenReader(inputFile);
         PrintWriter outFile = new PrintWriter(new FileWriter(outputFile));
 
         // gets and writes number of records
@@ -211,4 +353,383 @@ public class NearestNeighborTester {
         }
         return "undetermined";
     }
+
+    // times queries against random training sets of each size with brute force and both indexes, and checks the
+    // indexes give the same class as brute force for every query brute force answered
+    private static void indexBenchmark(int[] sizes) {
+        for (int size : sizes) {
+            Random random = new Random(SEED);
+            double[][] attributes = new double[size][];
+            int[] classNames = new int[size];
+            for (int i = 0; i < size; i++) {
+                attributes[i] = randomApplicant(random);
+                classNames[i] = randomClass(attributes[i], random);
+            }
+            double[][] queries = new double[BENCHMARK_QUERIES][];
+            for (int q = 0; q < queries.length; q++)
+                queries[q] = randomApplicant(random);
+
+            // brute force only gets through part of the queries on large sets
+            int bruteQueries = (int) Math.max(10, Math.min(queries.length, BRUTE_FORCE_WORK / size));
+            int[] expected = new int[bruteQueries];
+            NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
+            classifier.setTrainingData(attributes, classNames, 4);
+            long start = System.nanoTime();
+            for (int q = 0; q < bruteQueries; q++)
+                expected[q] = classifier.classify(queries[q]);
+            double bruteMicros = (System.nanoTime() - start) / 1e3 / bruteQueries;
+            System.out.println(String.format("%d records: brute force %.1f us/query (%d queries)",
+                                             size, bruteMicros, bruteQueries));
+
+            String[] names = {"kd tree", "ball tree"};
+            int[] kinds = {SpatialIndex.KD_TREE, SpatialIndex.BALL_TREE};
+            for (int n = 0; n < kinds.length; n++) {
+                classifier = new NearestNeighbor(NEIGHBORS);
+                classifier.setIndex(kinds[n]);
+                start = System.nanoTime();
+                classifier.setTrainingData(attributes, classNames, 4);
+                double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+                int mismatches = 0;
+                start = System.nanoTime();
+                for (int q = 0; q < queries.length; q++) {
+                    int className = classifier.classify(queries[q]);
+                    if (q < bruteQueries && className != expected[q])
+                        mismatches++;
+                }
+                double micros = (System.nanoTime() - start) / 1e3 / queries.length;
+                System.out.println(String.format("    %-9s built in %.2f s, %.1f us/query (%d queries), %.0fx brute force, "
+                                                 + "%d classes differ", names[n], buildSeconds, micros, queries.length,
+                                                 bruteMicros / micros, mismatches));
+            }
+        }
+    }
+
+    // classifies a random test file against a random training set searched with a KD tree, first on one thread and
+    // then on more, and checks each output against the one thread output
+    private static void parallelBenchmark(int testRecords, int maxThreads) throws IOException {
+        Random random = new Random(SEED);
+        double[][] attributes = new double[PARALLEL_TRAINING][];
+        int[] classNames = new int[PARALLEL_TRAINING];
+        for (int i = 0; i < PARALLEL_TRAINING; i++) {
+            attributes[i] = randomApplicant(random);
+            classNames[i] = randomClass(attributes[i], random);
+        }
+        NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
+        classifier.setIndex(SpatialIndex.KD_TREE);
+        classifier.setTrainingData(attributes, classNames, 4);
+
+        String testFile = scratchFile(PARALLEL_TEST_FILE);
+        PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(testFile)));
+        outFile.println(testRecords);
+        for (int i = 0; i < testRecords; i++) {
+            double[] applicant = randomApplicant(random);
+            for (int j = 0; j < applicant.length; j++)
+                outFile.print(applicant[j] + " ");
+            outFile.println();
+        }
+        outFile.close();
+
+        // warms up so the one thread run is not timed with the code still interpreted
+        classifier.classifyData(testFile, scratchFile(PARALLEL_OUTPUT + "1"), 1);
+
+        List<String> expected = null;
+        for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+            String output = scratchFile(PARALLEL_OUTPUT + threads);
+            long start = System.nanoTime();
+            classifier.classifyData(testFile, output, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            List<String> lines = java.nio.file.Files.readAllLines(new File(output).toPath());
+            if (expected == null)
+                expected = lines;
+            System.out.println(String.format("%d threads: %.0f records/s, %s", threads, testRecords / seconds,
+                                             lines.equals(expected) ? "same output as one thread"
+                                                                    : "OUTPUT DIFFERS FROM ONE THREAD"));
+            if (threads >= maxThreads)
+                break;
+        }
+    }
+
+    // writes a random training file of about the given size, in the format convertTrainingFile writes, and times
+    // reading it with Scanner and with TokenReader, checking both read the same bits, and loading it
+    private static void loadBenchmark(int megabytes) throws IOException {
+        StringWriter sample = new StringWriter();
+        PrintWriter sampleFile = new PrintWriter(sample);
+        Random random = new Random(SEED);
+        for (int i = 0; i < LOAD_SAMPLE; i++)
+            writeTrainingRecord(sampleFile, random);
+        sampleFile.close();
+        int numberRecords = (int) Math.min(Integer.MAX_VALUE, (long) megabytes * 1024 * 1024 * LOAD_SAMPLE
+                                                              / sample.toString().length());
+
+        random = new Random(SEED);
+        String loadFile = scratchFile(LOAD_FILE);
+        PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(loadFile), 1 << 16));
+        outFile.println(numberRecords + " 5 4");
+        for (int i = 0; i < numberRecords; i++)
+            writeTrainingRecord(outFile, random);
+        outFile.close();
+        double fileMegabytes = new File(loadFile).length() / 1048576.0;
+        System.out.println(String.format("%d records, %.0f MB", numberRecords, fileMegabytes));
+
+        // reads the file as loadTrainingData did, without keeping the records
+        long start = System.nanoTime();
+        Scanner scanner = new Scanner(new File(loadFile));
+        long scannerHash = scanner.nextInt() + scanner.nextInt() + scanner.nextInt();
+        for (int i = 0; i < numberRecords; i++) {
+            for (int j = 0; j < 5; j++)
+                scannerHash = 31 * scannerHash + Double.doubleToLongBits(scanner.nextDouble());
+            scannerHash = 31 * scannerHash + scanner.nextInt();
+        }
+        scanner.close();
+        printLoadTime("Scanner", start, fileMegabytes);
+
+        start = System.nanoTime();
+        TokenReader reader = new TokenReader(loadFile);
+        long readerHash = reader.nextInt() + reader.nextInt() + reader.nextInt();
+        for (int i = 0; i < numberRecords; i++) {
+            for (int j = 0; j < 5; j++)
+                readerHash = 31 * readerHash + Double.doubleToLongBits(reader.nextDouble());
+            readerHash = 31 * readerHash + reader.nextInt();
+        }
+        reader.close();
+        printLoadTime("TokenReader", start, fileMegabytes);
+        System.out.println(readerHash == scannerHash ? "    same values as Scanner" : "    VALUES DIFFER FROM SCANNER");
+
+        start = System.nanoTime();
+        new NearestNeighbor(NEIGHBORS).loadTrainingData(loadFile);
+        printLoadTime("loadTrainingData", start, fileMegabytes);
+
+        System.out.println(lastValueRead() ? "    last value of a file with no final newline read whole"
+                                           : "    LAST VALUE OF A FILE WITH NO FINAL NEWLINE READ WRONG");
+    }
+
+    // writes files whose last value runs to the end of the file, one short and one where that value starts in one
+    // buffer of TokenReader and ends in the next, and checks TokenReader reads the values back as written
+    private static boolean lastValueRead() throws IOException {
+        String file = scratchFile(LOAD_FILE);
+        try (PrintWriter outFile = new PrintWriter(new FileWriter(file))) {
+            outFile.print("1 2\n3");
+        }
+        try (TokenReader reader = new TokenReader(file)) {
+            if (reader.nextInt() != 1 || reader.nextInt() != 2 || reader.nextInt() != 3)
+                return false;
+        }
+
+        try (PrintWriter outFile = new PrintWriter(new FileWriter(file))) {
+            outFile.print("2\n1.5 low");
+        }
+        try (TokenReader reader = new TokenReader(file)) {
+            if (reader.nextInt() != 2 || reader.nextDouble() != 1.5 || !reader.next().equals("low"))
+                return false;
+        }
+
+        int padding = (1 << 16) - 3;
+        try (PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            for (int i = 0; i < padding; i++)
+                outFile.print(' ');
+            outFile.print("divorced");
+        }
+        try (TokenReader reader = new TokenReader(file)) {
+            return reader.next().equals("divorced");
+        }
+    }
+
+    // writes a random applicant and its class the way convertTrainingFile writes a record
+    private static void writeTrainingRecord(PrintWriter outFile, Random random) {
+        double[] attributes = randomApplicant(random);
+        outFile.print(attributes[0] + " ");
+        outFile.print(attributes[1] + " ");
+        outFile.print(attributes[2] + " ");
+        outFile.print((int) attributes[3] + " ");
+        outFile.print(attributes[4] + " ");
+        outFile.println(randomClass(attributes, random));
+    }
+
+    private static void printLoadTime(String name, long start, double megabytes) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("    %-16s %.1f s, %.1f MB/s", name, seconds, megabytes / seconds));
+    }
+
+    // times validation of random training records by brute force on one thread and on several, and with a KD tree,
+    // and checks they agree
+    private static void validationBenchmark(int records, int threads) {
+        Random random = new Random(SEED);
+        double[][] attributes = new double[records][];
+        int[] classNames = new int[records];
+        for (int i = 0; i < records; i++) {
+            attributes[i] = randomApplicant(random);
+            classNames[i] = randomClass(attributes[i], random);
+        }
+
+        String[] names = {"brute force, 1 thread", "brute force, " + threads + " threads", "kd tree, " + threads + " threads"};
+        int[] kinds = {NearestNeighbor.BRUTE_FORCE, NearestNeighbor.BRUTE_FORCE, SpatialIndex.KD_TREE};
+        int[] counts = {1, threads, threads};
+        double expected = 0;
+        for (int n = 0; n < kinds.length; n++) {
+            NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
+            classifier.setIndex(kinds[n]);
+            classifier.setTrainingData(attributes, classNames, 4);
+
+            long start = System.nanoTime();
+            double errorRate = classifier.validate(counts[n]);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (n == 0)
+                expected = errorRate;
+            System.out.println(String.format("    %-24s %.2f s, %s", names[n], seconds,
+                                             errorRate == expected ? "same error rate" : "ERROR RATE DIFFERS"));
+        }
+    }
+
+    // sweeps k over random training records, prints the error curve and checks it against validating each k
+    private static void sweepBenchmark(int largest, int records) {
+        Random random = new Random(SEED);
+        double[][] attributes = new double[records][];
+        int[] classNames = new int[records];
+        for (int i = 0; i < records; i++) {
+            attributes[i] = randomApplicant(random);
+            classNames[i] = randomClass(attributes[i], random);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        // the validations run first, so the sweep is not timed before the JIT has compiled the search
+        double[] validated = new double[largest + 1];
+        double validateSeconds = 0;
+        for (int k = 1; k <= largest; k++) {
+            NearestNeighbor classifier = new NearestNeighbor(k);
+            classifier.setTrainingData(attributes, classNames, 4);
+            long start = System.nanoTime();
+            validated[k] = classifier.validate(threads);
+            validateSeconds = (System.nanoTime() - start) / 1e9;
+        }
+
+        NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
+        classifier.setTrainingData(attributes, classNames, 4);
+        long start = System.nanoTime();
+        double[] errorRates = classifier.sweep(largest, threads);
+        double sweepSeconds = (System.nanoTime() - start) / 1e9;
+
+        int differences = 0;
+        for (int k = 1; k <= largest; k++)
+            if (errorRates[k] != validated[k])
+                differences++;
+
+        for (int k = 1; k <= largest; k++)
+            System.out.println(String.format("    k = %2d: %.2f%%", k, errorRates[k]));
+        System.out.println("best k: " + NearestNeighbor.bestK(errorRates));
+        System.out.println(String.format("sweep %.2f s, one validation with k = %d %.2f s, %s", sweepSeconds, largest,
+                                         validateSeconds, differences == 0 ? "every k matches its validation"
+                                                                           : differences + " K DIFFER FROM VALIDATION"));
+    }
+
+    // writes random original training and test files and classifies them with a KD tree, first through the converted
+    // files as main used to and then with the pipeline, on one thread and on every core, and times classification
+    // alone, which both have to do
+    private static void pipelineBenchmark(int trainingRecords, int testRecords) throws IOException {
+        String rawTrainingFile = scratchFile(RAW_TRAINING_FILE);
+        String rawTestFile = scratchFile(RAW_TEST_FILE);
+        String filesOutput = scratchFile(FILES_OUTPUT);
+        String pipelineOutput = scratchFile(PIPELINE_OUTPUT);
+        String trainingFile = scratchFile(TRAINING_FILE);
+        String testFile = scratchFile(TEST_FILE);
+        String classified = scratchFile(CLASSIFIED);
+
+        Random random = new Random(SEED);
+        try (PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(rawTrainingFile)))) {
+            outFile.println(trainingRecords + " 5 4");
+            for (int i = 0; i < trainingRecords; i++)
+                writeRawApplicant(outFile, random, true);
+        }
+        try (PrintWriter outFile = new PrintWriter(new BufferedWriter(new FileWriter(rawTestFile)))) {
+            outFile.println(testRecords);
+            for (int i = 0; i < testRecords; i++)
+                writeRawApplicant(outFile, random, false);
+        }
+
+        long start = System.nanoTime();
+        convertTrainingFile(rawTrainingFile, trainingFile);
+        convertTestFile(rawTestFile, testFile);
+        NearestNeighbor classifier = new NearestNeighbor(NEIGHBORS);
+        classifier.setIndex(SpatialIndex.KD_TREE);
+        classifier.loadTrainingData(trainingFile);
+        classifier.classifyData(testFile, classified);
+        convertClassFile(classified, filesOutput);
+        double filesSeconds = (System.nanoTime() - start) / 1e9;
+
+        double[][] queries = new double[testRecords][5];
+        try (TokenReader inFile = new TokenReader(rawTestFile)) {
+            inFile.nextInt();
+            for (int i = 0; i < testRecords; i++)
+                readApplicant(inFile, queries[i]);
+        }
+        start = System.nanoTime();
+        for (double[] query : queries)
+            classifier.classify(query);
+        double classifySeconds = (System.nanoTime() - start) / 1e9;
+        queries = null;
+
+        System.out.println(String.format("    classification alone %.2f s", classifySeconds));
+        System.out.println(String.format("    converted files      %.2f s", filesSeconds));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : cores == 1 ? new int[] {1} : new int[] {1, cores}) {
+            start = System.nanoTime();
+            classifier = new NearestNeighbor(NEIGHBORS);
+            classifier.setIndex(SpatialIndex.KD_TREE);
+            loadRawTrainingData(classifier, rawTrainingFile);
+            classifyRawData(classifier, rawTestFile, pipelineOutput, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            boolean same = java.nio.file.Files.readAllLines(new File(filesOutput).toPath())
+                           .equals(java.nio.file.Files.readAllLines(new File(pipelineOutput).toPath()));
+            System.out.println(String.format("    pipeline, %d thread%s  %.2f s, %.1fx faster, %s", threads,
+                                             threads == 1 ? " " : "s", seconds, filesSeconds / seconds,
+                                             same ? "same output" : "OUTPUT DIFFERS"));
+        }
+    }
+
+    // a new file in the temporary directory for a benchmark to write, deleted when the tester exits
+    private static String scratchFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".txt");
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+    // writes a random applicant the way the original files have them, with a class for training files
+    private static void writeRawApplicant(PrintWriter outFile, Random random, boolean training) {
+        int creditScore = CREDIT_START + random.nextInt(CREDIT_END - CREDIT_START + 1);
+        int income = INCOME_START + random.nextInt(INCOME_END - INCOME_START + 1);
+        int age = AGE_START + random.nextInt(AGE_END - AGE_START + 1);
+        String sex = random.nextBoolean() ? "male" : "female";
+        String status = new String[] {"married", "single", "divorced"}[random.nextInt(3)];
+        outFile.print(creditScore + " " + income + " " + age + " " + sex + " " + status);
+
+        if (training) {
+            double[] attributes = {normalize(creditScore, CREDIT_START, CREDIT_END),
+                                   normalize(income, INCOME_START, INCOME_END)};
+            outFile.print(" " + convertNumberToClass(randomClass(attributes, random)));
+        }
+        outFile.println();
+    }
+
+    // normalized attributes of a random applicant, with the whole numbers the input files have
+    private static double[] randomApplicant(Random random) {
+        double[] attributes = new double[5];
+        attributes[0] = normalize(CREDIT_START + random.nextInt(CREDIT_END - CREDIT_START + 1), CREDIT_START, CREDIT_END);
+        attributes[1] = normalize(INCOME_START + random.nextInt(INCOME_END - INCOME_START + 1), INCOME_START, INCOME_END);
+        attributes[2] = normalize(AGE_START + random.nextInt(AGE_END - AGE_START + 1), AGE_START, AGE_END);
+        attributes[3] = random.nextInt(2);
+        attributes[4] = random.nextInt(3) * 0.5;
+        return attributes;
+    }
+
+    // a class that mostly follows credit score and income, with some noise
+    private static int randomClass(double[] attributes, Random random) {
+        if (random.nextInt(10) == 0)
+            return 1 + random.nextInt(4);
+
+        double risk = 0.7 * attributes[0] + 0.3 * attributes[1];
+        return risk > 0.6 ? 1 : risk > 0.4 ? 2 : 3;
+    }
 }
@@ -0,0 +1,336 @@
+/*
+ * DESC: spatial index over the training records of NearestNeighbor, so a query only looks at the records near it
+ *       instead of all of them. records are split in halves along the attribute they spread most on, down to leaves
+ *       of at most LEAF_SIZE records, and every node keeps a lower bound on the distance from a query to any of its
+ *       records: its bounding box for a KD_TREE, or a center and radius for a BALL_TREE. queries visit the nearer
+ *       child first and skip every node that cannot hold a record close enough
+ * EXACTNESS: distances are the squared Euclidean distances NearestNeighbor computes, summed in the same order, and a
+ *            node is only skipped when its bound rules out every record in it, so queries find exactly what a scan of
+ *            every record would. ball bounds are lowered by SLACK times the distance to the center and the radius
+ *            they are made of, since rounding errors grow with them, so rounding can never lift a bound above a
+ *            distance, however large the attributes are
+ */
+
+import java.util.Arrays;
+
+public class SpatialIndex {
+    public static final int KD_TREE = 1;
+    public static final int BALL_TREE = 2;
+    private static final int LEAF_SIZE = 16;   // most records in a leaf
+    private static final double SLACK = 1e-9;  // share of the distances a ball bound is made of taken off it, to
+                                               // cover rounding
+
+    // Candidates class (inner class). records found by a query and their squared distances, grown as needed
+    public static class Candidates {
+        int[] ids = new int[16];
+        double[] distances = new double[16];
+        int size;
+
+        private void add(int id, double distance) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * size);
+                distances = Arrays.copyOf(distances, 2 * size);
+            }
+            ids[size] = id;
+            distances[size++] = distance;
+        }
+    }
+
+    private int kind;         // KD_TREE or BALL_TREE
+    private int dims;         // attributes per record
+    private double[] points;  // attributes of the records in tree order, one row of dims values per record
+    private int[] ids;        // record number of each row
+    private int[] start;      // first row of each node. the children of node n are 2n + 1 and 2n + 2
+    private int[] end;        // one past the last row of each node
+    private int firstLeaf;    // nodes from here on are leaves
+    private double[] boxes;   // KD_TREE: lowest then highest value of each attribute in each node
+    private double[] centers; // BALL_TREE: mean of the records of each node
+    private double[] radii;   // BALL_TREE: distance from the center to the farthest record of each node
+
+    // builds an index of the given kind over count records with dims attributes each, stored a column per attribute
+    // the way NearestNeighbor stores them: attribute a of record i at a * count + i
+    public SpatialIndex(double[] columns, int count, int dims, int kind) {
+        if (kind != KD_TREE && kind != BALL_TREE)
+            throw new IllegalArgumentException("unknown index kind " + kind);
+
+        this.kind = kind;
+        this.dims = dims;
+
+        // every leaf is at the same depth, deep enough that none holds more than LEAF_SIZE records
+        int depth = 0;
+        while ((count + (1L << depth) - 1) >> depth > LEAF_SIZE)
+            depth++;
+        firstLeaf = (1 << depth) - 1;
+        start = new int[2 * firstLeaf + 1];
+        end = new int[2 * firstLeaf + 1];
+
+        // rows are moved around whole while splitting, so every pass over a node's rows reads memory in order and the
+        // records of a leaf end up next to each other
+        ids = new int[count];
+        points = new double[count * dims];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+            for (int a = 0; a < dims; a++)
+                points[i * dims + a] = columns[a * count + i];
+        }
+        split(0, 0, count);
+
+        if (kind == KD_TREE)
+            boxes = new double[start.length * 2 * dims];
+        else {
+            centers = new double[start.length * dims];
+            radii = new double[start.length];
+        }
+        for (int node = start.length - 1; node >= 0; node--)
+            bound(node);
+    }
+
+    // sorts the rows of a node around the median of its widest attribute and splits them between its children
+    private void split(int node, int from, int to) {
+        start[node] = from;
+        end[node] = to;
+        if (node >= firstLeaf)
+            return;
+
+        int widest = 0;
+        double widestSpread = -1;
+        for (int a = 0; a < dims; a++) {
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            for (int row = from; row < to; row++) {
+                low = Math.min(low, points[row * dims + a]);
+                high = Math.max(high, points[row * dims + a]);
+            }
+            if (high - low > widestSpread) {
+                widest = a;
+                widestSpread = high - low;
+            }
+        }
+
+        int middle = (from + to) >>> 1;
+        select(from, to, middle, widest);
+        split(2 * node + 1, from, middle);
+        split(2 * node + 2, middle, to);
+    }
+
+    // moves the rows so the one at k holds the value it would have if the rows were sorted by one attribute, with no
+    // larger values before it and no smaller ones after. equal values are grouped, so repeated values cost nothing
+    private void select(int from, int to, int k, int a) {
+        while (to - from > 1) {
+            double pivot = points[((from + to) >>> 1) * dims + a];
+            int less = from;
+            int greater = to;
+            int row = from;
+            while (row < greater) {
+                double value = points[row * dims + a];
+                if (value < pivot)
+                    swap(less++, row++);
+                else if (value > pivot)
+                    swap(row, --greater);
+                else
+                    row++;
+            }
+
+            if (k < less)
+                to = less;
+            else if (k >= greater)
+                from = greater;
+            else
+                return;
+        }
+    }
+
+    // swaps two rows and their record numbers
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        for (int a = 0; a < dims; a++) {
+            double value = points[i * dims + a];
+            points[i * dims + a] = points[j * dims + a];
+            points[j * dims + a] = value;
+        }
+    }
+
+    // computes the bound of a node, from its rows for a leaf and from its children otherwise
+    private void bound(int node) {
+        int left = 2 * node + 1;
+        int right = 2 * node + 2;
+
+        if (kind == KD_TREE) {
+            int base = node * 2 * dims;
+            for (int a = 0; a < dims; a++) {
+                double low = Double.POSITIVE_INFINITY;
+                double high = Double.NEGATIVE_INFINITY;
+                if (node >= firstLeaf) {
+                    for (int row = start[node]; row < end[node]; row++) {
+                        low = Math.min(low, points[row * dims + a]);
+                        high = Math.max(high, points[row * dims + a]);
+                    }
+                }
+                else {
+                    low = Math.min(boxes[left * 2 * dims + a], boxes[right * 2 * dims + a]);
+                    high = Math.max(boxes[left * 2 * dims + dims + a], boxes[right * 2 * dims + dims + a]);
+                }
+                boxes[base + a] = low;
+                boxes[base + dims + a] = high;
+            }
+            return;
+        }
+
+        // the center is the mean of the rows and the radius reaches the farthest of them
+        int rows = end[node] - start[node];
+        for (int a = 0; a < dims; a++) {
+            double sum = 0;
+            if (node >= firstLeaf) {
+                for (int row = start[node]; row < end[node]; row++)
+                    sum += points[row * dims + a];
+            }
+            else {
+                sum = centers[left * dims + a] * (end[left] - start[left])
+                    + centers[right * dims + a] * (end[right] - start[right]);
+            }
+            centers[node * dims + a] = rows == 0 ? 0 : sum / rows;
+        }
+
+        double radius = 0;
+        for (int row = start[node]; row < end[node]; row++)
+            radius = Math.max(radius, distance(centers, node * dims, row));
+        radii[node] = Math.sqrt(radius);
+    }
+
+    // returns the squared distance from a query to the k-th nearest record, leaving out record exclude (-1 for none).
+    // heap has to hold at least k values
+    public double kthDistance(double[] query, int k, int exclude, double[] heap) {
+        int size = nearest(0, query, k, exclude, heap, 0);
+        return size < k ? Double.POSITIVE_INFINITY : heap[0];
+    }
+
+    // adds every record of a node that is nearer than the farthest of the k nearest found so far to the max heap of
+    // their distances, which holds size values. returns the new size
+    private int nearest(int node, double[] query, int k, int exclude, double[] heap, int size) {
+        if (node >= firstLeaf) {
+            for (int row = start[node]; row < end[node]; row++) {
+                if (ids[row] == exclude)
+                    continue;
+
+                double distance = distance(query, row);
+                if (size < k)
+                    push(heap, size++, distance);
+                else if (distance < heap[0])
+                    replaceTop(heap, size, distance);
+            }
+            return size;
+        }
+
+        int near = 2 * node + 1;
+        int far = 2 * node + 2;
+        double nearBound = lowerBound(near, query);
+        double farBound = lowerBound(far, query);
+        if (farBound < nearBound) {
+            near = 2 * node + 2;
+            far = 2 * node + 1;
+            double bound = nearBound;
+            nearBound = farBound;
+            farBound = bound;
+        }
+
+        if (size < k || nearBound < heap[0])
+            size = nearest(near, query, k, exclude, heap, size);
+        if (size < k || farBound < heap[0])
+            size = nearest(far, query, k, exclude, heap, size);
+        return size;
+    }
+
+    // adds every record within a squared distance of a query to candidates, leaving out record exclude (-1 for none)
+    public void within(double[] query, double limit, int exclude, Candidates candidates) {
+        candidates.size = 0;
+        within(0, query, limit, exclude, candidates);
+    }
+
+    private void within(int node, double[] query, double limit, int exclude, Candidates candidates) {
+        if (lowerBound(node, query) > limit)
+            return;
+
+        if (node >= firstLeaf) {
+            for (int row = start[node]; row < end[node]; row++) {
+                double distance = distance(query, row);
+                if (distance <= limit && ids[row] != exclude)
+                    candidates.add(ids[row], distance);
+            }
+            return;
+        }
+
+        within(2 * node + 1, query, limit, exclude, candidates);
+        within(2 * node + 2, query, limit, exclude, candidates);
+    }
+
+    // lowest squared distance a query can have to any record of a node
+    private double lowerBound(int node, double[] query) {
+        if (kind == KD_TREE) {
+            int base = node * 2 * dims;
+            double distance = 0;
+            for (int a = 0; a < dims; a++) {
+                double gap = 0;
+                if (query[a] < boxes[base + a])
+                    gap = query[a] - boxes[base + a];
+                else if (query[a] > boxes[base + dims + a])
+                    gap = query[a] - boxes[base + dims + a];
+                distance = distance + gap * gap;
+            }
+            return distance;
+        }
+
+        double centerDistance = Math.sqrt(distance(query, 0, centers, node * dims));
+        double gap = centerDistance - radii[node] - SLACK * (centerDistance + radii[node]);
+        return gap > 0 ? gap * gap : 0;
+    }
+
+    // squared distance from a query to a row, summed in the same order as NearestNeighbor
+    private double distance(double[] query, int row) {
+        return distance(query, 0, points, row * dims);
+    }
+
+    private double distance(double[] u, int uFrom, double[] v, int vFrom) {
+        double distance = 0;
+        for (int a = 0; a < dims; a++)
+            distance = distance + (u[uFrom + a] - v[vFrom + a]) * (u[uFrom + a] - v[vFrom + a]);
+        return distance;
+    }
+
+    // distance from a center to a row
+    private double distance(double[] centers, int from, int row) {
+        return distance(centers, from, points, row * dims);
+    }
+
+    // adds a value to a max heap holding size values
+    private static void push(double[] heap, int size, double value) {
+        int child = size;
+        while (child > 0 && heap[(child - 1) / 2] < value) {
+            heap[child] = heap[(child - 1) / 2];
+            child = (child - 1) / 2;
+        }
+        heap[child] = value;
+    }
+
+    // replaces the largest value of a full max heap
+    private static void replaceTop(double[] heap, int size, double value) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] > heap[child])
+                child++;
+            if (heap[child] <= value)
+                break;
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = value;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * DESC: reads the whitespace separated values of the data files straight from the bytes of the file, in place of
+ *       Scanner. the file is read through a FileChannel into one reused buffer, so a file of any size streams in the
+ *       same memory, and numbers are parsed from the buffer without making a String or matching a pattern.
+ *       nextDouble gives exactly the double Double.parseDouble gives: decimals with few enough digits are converted
+ *       with a single rounded multiplication or division, and anything else (long fractions, large exponents, NaN)
+ *       falls back to Double.parseDouble. words repeat in the data files, so next keeps the last ones it made and
+ *       returns the same String again instead of a new one
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class TokenReader implements Closeable {
+    private static final int BUFFER = 1 << 16; // bytes read at a time, and the longest value that can be read
+    private static final int WORDS = 64;       // words remembered by next, a power of two
+    private static final long EXACT = 1L << 53; // digits below this are exactly a double
+    private static final double[] POWERS = {   // powers of ten that are exactly a double
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private String file;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+    private byte[] bytes = buffer.array();
+    private int position;        // next unread byte of the buffer
+    private int limit;           // end of the bytes read into the buffer
+    private long offset;         // position in the file of the first byte of the buffer
+    private boolean end;         // whether the whole file has been read
+    private int start;           // first byte of the last value found
+    private int stop;            // one past its last byte
+    private String[] words = new String[WORDS];
+
+    public TokenReader(String file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+    }
+
+    // reads the next value as an int
+    public int nextInt() throws IOException {
+        token();
+        int at = start;
+        boolean negative = bytes[at] == '-';
+        if (negative || bytes[at] == '+')
+            at++;
+        if (at == stop)
+            throw mismatch("an integer");
+
+        long value = 0;
+        for (; at < stop; at++) {
+            int digit = bytes[at] - '0';
+            if (digit < 0 || digit > 9)
+                throw mismatch("an integer");
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1)
+                throw mismatch("an integer");
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE)
+            throw mismatch("an integer");
+        return (int) value;
+    }
+
+    // reads the next value as a double
+    public double nextDouble() throws IOException {
+        token();
+        int at = start;
+        boolean negative = bytes[at] == '-';
+        if (negative || bytes[at] == '+')
+            at++;
+
+        // gathers the digits as a whole number and a power of ten, giving up on more than 18 of them
+        long digits = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean point = false;
+        for (; at < stop; at++) {
+            byte b = bytes[at];
+            if (b == '.' && !point) {
+                point = true;
+                continue;
+            }
+            if (b < '0' || b > '9')
+                break;
+
+            any = true;
+            if (digits > 0 || b != '0')
+                significant++;
+            if (significant > 18)
+                return parse();
+            digits = 10 * digits + (b - '0');
+            if (point)
+                exponent--;
+        }
+        if (!any)
+            return parse();
+
+        if (at < stop && (bytes[at] == 'e' || bytes[at] == 'E')) {
+            at++;
+            boolean negativeExponent = at < stop && bytes[at] == '-';
+            if (at < stop && (bytes[at] == '-' || bytes[at] == '+'))
+                at++;
+            if (at == stop)
+                return parse();
+            int power = 0;
+            for (; at < stop && bytes[at] >= '0' && bytes[at] <= '9' && power < 1000; at++)
+                power = 10 * power + (bytes[at] - '0');
+            exponent += negativeExponent ? -power : power;
+        }
+        if (at < stop)
+            return parse();
+
+        // both numbers are exact doubles, so one rounded operation gives the nearest double to the value
+        if (digits == 0)
+            return negative ? -0.0 : 0.0;
+        if (digits >= EXACT || exponent < -22 || exponent > 22)
+            return parse();
+        double value = exponent < 0 ? digits / POWERS[-exponent] : digits * POWERS[exponent];
+        return negative ? -value : value;
+    }
+
+    // the last value found parsed by Double.parseDouble, for whatever the quick conversion does not handle
+    private double parse() throws IOException {
+        try {
+            return Double.parseDouble(text());
+        } catch (NumberFormatException e) {
+            throw mismatch("a number");
+        }
+    }
+
+    // reads the next value as a word
+    public String next() throws IOException {
+        token();
+        int hash = 0;
+        for (int at = start; at < stop; at++)
+            hash = 31 * hash + bytes[at];
+
+        int slot = hash & (WORDS - 1);
+        if (words[slot] == null || !matches(words[slot]))
+            words[slot] = text();
+        return words[slot];
+    }
+
+    // whether the last value found is the given word, for words made of plain ASCII
+    private boolean matches(String word) {
+        if (word.length() != stop - start)
+            return false;
+        for (int i = 0; i < word.length(); i++)
+            if (bytes[start + i] < 0 || word.charAt(i) != bytes[start + i])
+                return false;
+        return true;
+    }
+
+    private String text() {
+        return new String(bytes, start, stop - start, StandardCharsets.UTF_8);
+    }
+
+    private IOException mismatch(String expected) {
+        return new IOException("expected " + expected + " but found \"" + text() + "\" at byte " + (offset + start)
+                               + " of " + file);
+    }
+
+    // finds the next value, reading more of the file until the whole of it is in the buffer. spaces and control
+    // characters separate values, while bytes of characters past ASCII are part of them
+    private void token() throws IOException {
+        while (true) {
+            while (position < limit && (bytes[position] & 0xFF) <= ' ')
+                position++;
+            if (position < limit)
+                break;
+            if (!fill())
+                throw new EOFException("no more values in " + file);
+        }
+
+        int at = position;
+        while (true) {
+            while (at < limit && (bytes[at] & 0xFF) > ' ')
+                at++;
+            if (at < limit)
+                break;
+            // fill moves the unread bytes to the front even when it reaches the end of the file
+            int scanned = at - position;
+            boolean more = fill();
+            at = position + scanned;
+            if (!more)
+                break;
+        }
+
+        start = position;
+        stop = at;
+        position = at;
+    }
+
+    // moves the unread bytes to the front of the buffer and reads more after them. returns false at the end of the file
+    private boolean fill() throws IOException {
+        if (end)
+            return false;
+
+        int unread = limit - position;
+        if (unread == BUFFER)
+            throw new IOException("value longer than " + BUFFER + " bytes at byte " + (offset + position) + " of " + file);
+        System.arraycopy(bytes, position, bytes, 0, unread);
+        offset += position;
+        position = 0;
+        limit = unread;
+
+        buffer.limit(BUFFER).position(limit);
+        int read = channel.read(buffer);
+        if (read < 0) {
+            end = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}